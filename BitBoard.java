@@ -0,0 +1,1114 @@
+/** a bitboard engine for the Power Connect Four game.
+ * every column keeps one long mask per player, bit r of the mask is set
+ * when the player owns the token in row r of that column. columns that
+ * grow taller then 64 rows (power drops) spill into more words, every column
+ * has its own words so a tower does not make the short columns bigger.
+ * scans only look at the rows under the tops of the columns of a line, so the
+ * work follows the number of tokens, not the columns times the tallest column.
+ * moves are shift-and-mask operations on those words, the caller is the one
+ * checking that a move is legal before applying it.
+ * @author Fatemah Bahzad
+ */
+
+public class BitBoard {
+
+	/**
+	 * side index of the first player, same as Token.RED.ordinal().
+	 */
+	public static final int RED = 0;
+	/**
+	 * side index of the second player, same as Token.YELLOW.ordinal().
+	 */
+	public static final int YELLOW = 1;
+	/**
+	 * returned by get when the cell has no token.
+	 */
+	public static final int EMPTY = -1;
+
+	/**
+	 * number of connected tokens needed to win, unless another one is given.
+	 */
+	public static final int WIN_LENGTH = 4;
+
+	/**
+	 * number of columns in the board.
+	 */
+	private final int cols;
+	/**
+	 * number of connected tokens needed to win on this board.
+	 */
+	private int winLength;
+	/**
+	 * runs[k] has a bit set for every row whose k cells to the left are owned, scratch of hasFourConnected.
+	 */
+	private long[] runs;
+	/**
+	 * bits[side][col][w] holds rows w*64 to w*64+63 of col for that side,
+	 * rows at and above the top of the column are always zero.
+	 */
+	private long[][][] bits;
+	/**
+	 * number of tokens in each column.
+	 */
+	private int[] height;
+	/**
+	 * columns[h] is the number of columns holding h tokens, zero above the tallest column.
+	 * a move changes one height by one, so the tallest column is kept in O(1).
+	 */
+	private int[] columns;
+	/**
+	 * height of the tallest column.
+	 */
+	private int tallest;
+	/**
+	 * zobrist hash of the tokens, kept up to date by every move.
+	 */
+	private long hash;
+	/**
+	 * zobrist hash of the tokens mirrored left to right, kept up to date with hash.
+	 */
+	private long mirror;
+
+	/**
+	 * false while the hashes are not kept, see hashing.
+	 */
+	private boolean hashed=true;
+
+	/**
+	 * counts of the tokens in every line, or null until threats is called.
+	 */
+	private ThreatCounters threats;
+
+	/**
+	 * seed of the zobrist keys.
+	 */
+	private static final long SEED = 0x2545F4914F6CDD1DL;
+	/**
+	 * hashed in when yellow is the player to move.
+	 */
+	private static final long YELLOW_TO_MOVE = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * create an empty board with the given number of columns, four connected tokens win.
+	 * @param cols number of columns
+	 */
+	public BitBoard(int cols) {
+		this(cols, WIN_LENGTH);
+	}
+
+	/**
+	 * create an empty board with the given number of columns and win length.
+	 * @param cols number of columns
+	 * @param winLength number of connected tokens needed to win, 2 or more
+	 */
+	public BitBoard(int cols, int winLength) {
+		if (cols<1) {
+			throw new IllegalArgumentException("Columns must be positive");
+		}
+		if (winLength<2) {
+			throw new IllegalArgumentException("Win length must be at least 2");
+		}
+		this.cols=cols;
+		setWinLength(winLength);
+		this.bits=new long[2][cols][1];
+		this.height=new int[cols];
+		this.columns=new int[2];
+		this.columns[0]=cols;
+	}
+
+	/**
+	 * create a copy of another board.
+	 * @param other the board to copy
+	 */
+	public BitBoard(BitBoard other) {
+		this(other.cols, other.winLength);
+		copyFrom(other);
+	}
+
+	/**
+	 * make this board the same as the other one, reusing the arrays when they are big enough.
+	 * only the words holding tokens are copied or cleared. the win length is copied too.
+	 * @param other a board with the same number of columns
+	 */
+	public void copyFrom(BitBoard other) {
+		if (other.cols!=cols) {
+			throw new IllegalArgumentException("Boards have different number of columns");
+		}
+		if (other.winLength!=winLength) {
+			setWinLength(other.winLength);
+		}
+		for (int i=0; i<cols; i++) {
+			int used=(other.height[i]+63)>>>6;
+			int stale=(height[i]+63)>>>6;
+			for (int s=0; s<2; s++) {
+				if (bits[s][i].length<used) {
+					bits[s][i]=new long[other.bits[s][i].length];
+				}
+				System.arraycopy(other.bits[s][i], 0, bits[s][i], 0, used);
+				if (stale>used) {
+					java.util.Arrays.fill(bits[s][i], used, stale, 0L); //this column was taller
+				}
+			}
+			height[i]=other.height[i];
+		}
+		if (columns.length<=other.tallest) {
+			columns=new int[other.columns.length];
+		}
+		System.arraycopy(other.columns, 0, columns, 0, other.tallest+1);
+		if (tallest>other.tallest) {
+			java.util.Arrays.fill(columns, other.tallest+1, tallest+1, 0);
+		}
+		tallest=other.tallest;
+		if (hashed && other.hashed) {
+			hash=other.hash;
+			mirror=other.mirror;
+		}
+		else if (hashed) {
+			hash=computeHash();
+			mirror=computeMirrorHash();
+		}
+		recount();
+	}
+
+	/**
+	 * take every token away, keeping the arrays.
+	 */
+	public void clear() {
+		for (int i=0; i<cols; i++) {
+			int used=(height[i]+63)>>>6;
+			java.util.Arrays.fill(bits[RED][i], 0, used, 0L);
+			java.util.Arrays.fill(bits[YELLOW][i], 0, used, 0L);
+		}
+		java.util.Arrays.fill(height, 0);
+		java.util.Arrays.fill(columns, 0, tallest+1, 0);
+		columns[0]=cols;
+		tallest=0;
+		hash=0L;
+		mirror=0L;
+		recount();
+	}
+
+	/**
+	 * set 64 rows of a column at once, to load a saved board into a cleared one.
+	 * the hash is not changed, call rehash when every column is set.
+	 * @param col index of the column
+	 * @param w which 64 rows, the words below it must be set already
+	 * @param rows tokens in these 64 rows, 1 to 64
+	 * @param yellow mask of the yellow tokens, the other ones are red
+	 */
+	void setWord(int col, int w, int rows, long yellow) {
+		ensureRow(col, (w<<6)+rows-1);
+		long filled=(rows==64) ? -1L : (1L<<rows)-1;
+		bits[RED][col][w]=filled&~yellow;
+		bits[YELLOW][col][w]=filled&yellow;
+		setHeight(col, (w<<6)+rows);
+	}
+
+	/**
+	 * keep the zobrist hashes up to date or stop keeping them. random playouts
+	 * never read a hash, without them a move does not compute the keys of the cells
+	 * it changes. while it is off hash, mirrorHash and symmetricHash are stale,
+	 * turning it on hashes every token again.
+	 * @param on true to keep the hashes, the default
+	 */
+	public void hashing(boolean on) {
+		if (on && !hashed) {
+			hash=computeHash();
+			mirror=computeMirrorHash();
+		}
+		hashed=on;
+	}
+
+	/**
+	 * hash the tokens again after the board was loaded with setWord.
+	 */
+	void rehash() {
+		hash=computeHash();
+		mirror=computeMirrorHash();
+		recount();
+	}
+
+	/**
+	 * get the counts of the tokens in every line, for threats and evaluation.
+	 * the first call counts the tokens there are, after that every move keeps
+	 * the counters up to date, which costs every line through the cells it changes.
+	 * @return the counters of this board
+	 */
+	public ThreatCounters threats() {
+		if (threats==null) {
+			threats=new ThreatCounters(this);
+		}
+		return threats;
+	}
+
+	/**
+	 * score the position for the side from the threat counters, see ThreatCounters.evaluate.
+	 * @param side RED or YELLOW
+	 * @return score for side, positive when side is ahead
+	 */
+	public int evaluate(int side) {
+		return threats().evaluate(side);
+	}
+
+	/**
+	 * count the threat counters again after the tokens were replaced, if they are kept.
+	 */
+	private void recount() {
+		if (threats==null) {
+			return;
+		}
+		if (threats.winLength()!=winLength) {
+			threats=new ThreatCounters(this);
+		}
+		else {
+			threats.rebuild();
+		}
+	}
+
+	/**
+	 * get the number of columns.
+	 * @return cols
+	 */
+	public int cols() {
+		return cols;
+	}
+
+	/**
+	 * get the number of connected tokens needed to win.
+	 * @return winLength
+	 */
+	public int winLength() {
+		return winLength;
+	}
+
+	/**
+	 * change the win length and size the scratch arrays for it.
+	 * @param winLength number of connected tokens needed to win
+	 */
+	private void setWinLength(int winLength) {
+		this.winLength=winLength;
+		runs=new long[winLength];
+	}
+
+	/**
+	 * get the number of tokens in the column.
+	 * @param col index of the column
+	 * @return height of the column
+	 */
+	public int height(int col) {
+		return height[col];
+	}
+
+	/**
+	 * get the number of tokens in the tallest column, in O(1).
+	 * @return height of the tallest column, 0 for an empty board
+	 */
+	public int tallest() {
+		return tallest;
+	}
+
+	/**
+	 * change the height of a column and the count of columns of every height.
+	 * @param col index of the column
+	 * @param h the new height
+	 */
+	private void setHeight(int col, int h) {
+		columns[height[col]]--;
+		if (h>=columns.length) {
+			columns=java.util.Arrays.copyOf(columns, Math.max(h+1, columns.length*2));
+		}
+		columns[h]++;
+		height[col]=h;
+		if (h>tallest) {
+			tallest=h;
+		}
+		while (columns[tallest]==0) {
+			tallest--; //once for a move, every column is counted at some height
+		}
+	}
+
+	/**
+	 * get the side owning the token at col, row.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @return RED, YELLOW or EMPTY if there is no token there
+	 */
+	public int get(int col, int row) {
+		if (row>=height[col]) {
+			return EMPTY;
+		}
+		return (bits[RED][col][row>>>6] & (1L<<row))!=0 ? RED : YELLOW;
+	}
+
+	/**
+	 * get 64 rows of the side's mask of the column.
+	 * @param side RED or YELLOW
+	 * @param col index of the column
+	 * @param w which 64 rows, 0 for rows 0 to 63
+	 * @return the mask word, 0 above the top of the board
+	 */
+	public long word(int side, int col, int w) {
+		long[] c=bits[side][col];
+		return (w<c.length) ? c[w] : 0L;
+	}
+
+	/**
+	 * add a token of the side on top of the column.
+	 * @param col index of the column
+	 * @param side RED or YELLOW
+	 */
+	public void drop(int col, int side) {
+		int row=height[col];
+		ensureRow(col, row);
+		bits[side][col][row>>>6]|=1L<<row;
+		toggle(col, row, side, true);
+		setHeight(col, row+1);
+	}
+
+	/**
+	 * insert a token of the side at the row, tokens at and above the row move up by one.
+	 * @param col index of the column
+	 * @param row index of the row, 0 to height(col)
+	 * @param side RED or YELLOW
+	 */
+	public void powerDrop(int col, int row, int side) {
+		int h=height[col];
+		ensureRow(col, h);
+		//the new top cell gets the old top token, cells in between change where their neighbours differ
+		if (hashed || threats!=null) {
+			if (row<h) {
+				toggle(col, h, get(col, h-1), true);
+				toggleChanges(col, row+1, h-1, 0);
+				if (get(col, row)!=side) {
+					flip(col, row);
+				}
+			}
+			else {
+				toggle(col, h, side, true);
+			}
+		}
+		shiftUp(bits[RED][col], col, row);
+		shiftUp(bits[YELLOW][col], col, row);
+		bits[side][col][row>>>6]|=1L<<row;
+		setHeight(col, h+1);
+	}
+
+	/**
+	 * remove the bottom token of the column, tokens above move down by one.
+	 * @param col index of the column, must not be empty
+	 * @return the side of the removed token
+	 */
+	public int pop(int col) {
+		return powerPop(col, 0);
+	}
+
+	/**
+	 * remove the token at the row, tokens above it move down by one.
+	 * @param col index of the column
+	 * @param row index of the row, 0 to height(col)-1
+	 * @return the side of the removed token
+	 */
+	public int powerPop(int col, int row) {
+		int side=get(col, row);
+		int h=height[col];
+		//the top cell empties, cells below it change where their neighbours differ
+		if (hashed || threats!=null) {
+			toggle(col, h-1, get(col, h-1), false);
+			toggleChanges(col, row+1, h-1, 1);
+		}
+		shiftDown(bits[RED][col], col, row);
+		shiftDown(bits[YELLOW][col], col, row);
+		setHeight(col, h-1);
+		return side;
+	}
+
+	/**
+	 * make a packed move for the side, the move has to be legal.
+	 * @param move the move packed as in Move
+	 * @param side the player making the move
+	 * @return the lowest row the move changed
+	 */
+	public int play(int move, int side) {
+		int col=Move.col(move);
+		switch (Move.kind(move)) {
+			case Move.DROP:
+				drop(col, side);
+				return height[col]-1;
+			case Move.POP:
+				pop(col);
+				return 0;
+			case Move.POWER_DROP:
+				powerDrop(col, Move.row(move), side);
+				return Move.row(move);
+			default:
+				powerPop(col, Move.row(move));
+				return Move.row(move);
+		}
+	}
+
+	/**
+	 * take back a move made with play. pops only remove tokens of the player
+	 * making them, so the move and the side are all that is needed.
+	 * @param move the move packed as in Move
+	 * @param side the player that made the move
+	 */
+	public void undo(int move, int side) {
+		int col=Move.col(move);
+		switch (Move.kind(move)) {
+			case Move.DROP:
+				powerPop(col, height[col]-1);
+				break;
+			case Move.POP:
+				powerDrop(col, 0, side);
+				break;
+			case Move.POWER_DROP:
+				powerPop(col, Move.row(move));
+				break;
+			default:
+				powerDrop(col, Move.row(move), side);
+		}
+	}
+
+	/**
+	 * count the tokens of the side in the column.
+	 * @param side RED or YELLOW
+	 * @param col index of the column
+	 * @return number of tokens
+	 */
+	public int count(int side, int col) {
+		int total=0;
+		int last=(height[col]+63)>>>6;
+		for (int w=0; w<last; w++) {
+			total+=Long.bitCount(bits[side][col][w]);
+		}
+		return total;
+	}
+
+	/**
+	 * get the zobrist hash of the tokens in the board, equal boards have equal hashes.
+	 * @return 64 bit hash
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * get the zobrist hash of the board with the player to move.
+	 * @param side the player to move
+	 * @return 64 bit hash
+	 */
+	public long hash(int side) {
+		return (side==YELLOW) ? hash^YELLOW_TO_MOVE : hash;
+	}
+
+	/**
+	 * get the zobrist hash of the board mirrored left to right, with the player to move.
+	 * it is hash(side) of the board whose column i is column cols-1-i of this one.
+	 * @param side the player to move
+	 * @return 64 bit hash
+	 */
+	public long mirrorHash(int side) {
+		return (side==YELLOW) ? mirror^YELLOW_TO_MOVE : mirror;
+	}
+
+	/**
+	 * get a hash that is the same for the board and its mirror image, with the player to move.
+	 * it is the smaller of hash(side) and mirrorHash(side), mirrored tells which one.
+	 * @param side the player to move
+	 * @return 64 bit hash
+	 */
+	public long symmetricHash(int side) {
+		return Math.min(hash(side), mirrorHash(side));
+	}
+
+	/**
+	 * check whether symmetricHash is the hash of the mirror image, then moves kept
+	 * under that hash are mirrored too, translate them with Move.mirror.
+	 * @param side the player to move
+	 * @return true if the mirror image is the one hashed
+	 */
+	public boolean mirrored(int side) {
+		return mirrorHash(side)<hash(side);
+	}
+
+	/**
+	 * hash the mirror image of every token again, used to check the kept mirror hash.
+	 * @return 64 bit hash
+	 */
+	long computeMirrorHash() {
+		long h=0L;
+		for (int i=0; i<cols; i++) {
+			for (int r=0; r<height[i]; r++) {
+				h^=key(cols-1-i, r, get(i, r));
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * hash every token again, used to check the kept hash.
+	 * @return 64 bit hash
+	 */
+	long computeHash() {
+		long h=0L;
+		for (int i=0; i<cols; i++) {
+			for (int r=0; r<height[i]; r++) {
+				h^=key(i, r, get(i, r));
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * get the zobrist key of a token, computed instead of stored so columns can grow.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param side RED or YELLOW
+	 * @return the key
+	 */
+	private static long key(int col, int row, int side) {
+		return mix(SEED ^ (((long) col<<33) | ((long) row<<1) | side)); //mix is one to one
+	}
+
+	/**
+	 * hash a token in or out, in both hashes, and count it in the threat counters.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param side RED or YELLOW
+	 * @param in true when the token comes, false when it goes
+	 */
+	private void toggle(int col, int row, int side, boolean in) {
+		if (hashed) {
+			hash^=key(col, row, side);
+			mirror^=key(cols-1-col, row, side);
+		}
+		if (threats!=null) {
+			if (in) {
+				threats.add(col, row, side);
+			}
+			else {
+				threats.remove(col, row, side);
+			}
+		}
+	}
+
+	/**
+	 * change the hashes and the threat counters for a cell whose token changes side.
+	 * it is called before the column is shifted, the cell still holds the old token.
+	 * @param col index of the column
+	 * @param row index of the row
+	 */
+	private void flip(int col, int row) {
+		if (hashed) {
+			hash^=key(col, row, RED)^key(col, row, YELLOW);
+			mirror^=key(cols-1-col, row, RED)^key(cols-1-col, row, YELLOW);
+		}
+		if (threats!=null) {
+			threats.flip(col, row, get(col, row));
+		}
+	}
+
+	/**
+	 * flip the hash of every cell from row lo to hi whose token differs from its
+	 * neighbour, before the column is shifted by one. only those cells change side.
+	 * @param col index of the column
+	 * @param lo lowest row to look at
+	 * @param hi highest row to look at
+	 * @param down 0 when the cells take the token below them, 1 when they take the one above
+	 */
+	private void toggleChanges(int col, int lo, int hi, int down) {
+		long[] c=bits[RED][col];
+		for (int base=lo; base<=hi; base+=64) {
+			//bit t is set when rows base+t and base+t-1 hold different tokens
+			long diff=window(c, base) ^ window(c, base-1);
+			if (hi-base<63) {
+				diff&=(1L<<(hi-base+1))-1;
+			}
+			while (diff!=0) {
+				int t=Long.numberOfTrailingZeros(diff);
+				flip(col, base+t-down);
+				diff&=diff-1;
+			}
+		}
+	}
+
+	/**
+	 * scramble the bits of a long (the splitmix64 finalizer).
+	 * @param z the value to mix
+	 * @return mixed value
+	 */
+	static long mix(long z) {
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+
+	/**
+	 * count the lines of four where the side has three tokens and the last cell is empty.
+	 * @param side RED or YELLOW
+	 * @return number of open threes
+	 */
+	public int countThrees(int side) {
+		long[][] m=bits[side];
+		int total=0;
+		for (int i=0; i<cols; i++) {
+			//one of the first two cells of a line is owned, so the line starts under the top of one of them
+			total+=threes(m, i, height[i], 0, 1);
+			if (i+winLength<=cols) {
+				total+=threes(m, i, Math.max(height[i], height[i+1]), 1, 0)
+					+threes(m, i, Math.max(height[i], height[i+1]+1), 1, -1)
+					+threes(m, i, Math.max(height[i], height[i+1]-1), 1, 1);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * count the winLength long lines starting at column col and rows 0 to top-1
+	 * with exactly one empty cell and every other cell owned by the side.
+	 * @param m the masks of one side
+	 * @param col the first column of the line
+	 * @param top no line starts at or above this row
+	 * @param dc column step
+	 * @param dr row step
+	 * @return number of those lines
+	 */
+	private int threes(long[][] m, int col, int top, int dc, int dr) {
+		int total=0;
+		for (int base=0; base<top; base+=64) {
+			long full=-1L; //every cell owned so far
+			long one=0L; //every cell owned but one empty cell
+			for (int k=0; k<winLength; k++) {
+				int c=col+k*dc;
+				int offset=base+k*dr;
+				long own=window(m[c], offset);
+				long open=emptyWindow(c, offset);
+				one=(one & own) | (full & open);
+				full&=own;
+			}
+			total+=Long.bitCount(one);
+		}
+		return total;
+	}
+
+	/**
+	 * get 64 rows of the column starting at the given row, a bit is set when the cell is empty.
+	 * rows below zero are not cells so they are never empty.
+	 * @param col index of the column
+	 * @param offset the first row, can be negative
+	 * @return the empty cells as a long
+	 */
+	private long emptyWindow(int col, int offset) {
+		long open=~(window(bits[RED][col], offset) | window(bits[YELLOW][col], offset));
+		if (offset<0) {
+			open&=(offset<=-64) ? 0L : -1L<<-offset; //keep rows from 0 up
+		}
+		return open;
+	}
+
+	/**
+	 * check whether the side has winLength connected tokens
+	 * horizontally, vertically, or diagonally.
+	 * @param side RED or YELLOW
+	 * @return true if the side has winLength tokens connected
+	 */
+	public boolean hasFourConnected(int side) {
+		long[][] m=bits[side];
+		//every line is an AND of shifted windows, checked only under the tops of the columns it crosses
+		for (int i=0; i<cols; i++) {
+			if (height[i]==0) {
+				continue; //every line starting here starts with an empty cell
+			}
+			if (lines(m, i, height[i]-winLength+1, 0, 1)) { //vertical
+				return true;
+			}
+			if (i+winLength>cols) {
+				continue;
+			}
+			if (lines(m, i, reach(i, 0), 1, 0) //horizontal
+				|| lines(m, i, reach(i, -1), 1, -1) //major diagonal, going down to the right
+				|| lines(m, i, reach(i, 1), 1, 1)) { //minor diagonal, going up to the right
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * get the row where the lines starting at column col stop, a full line
+	 * starts under the top of its first column and ends under the top of its last one.
+	 * @param col the first column of the line
+	 * @param dr row step from one column to the next
+	 * @return no full line starts at or above this row
+	 */
+	private int reach(int col, int dr) {
+		int k=winLength-1;
+		return Math.min(height[col], height[col+k]-k*dr);
+	}
+
+	/**
+	 * check the winLength long lines starting at column col and rows 0 to top-1, 64 rows at a time.
+	 * @param m the masks of one side
+	 * @param col the first column of the line
+	 * @param top no line starts at or above this row
+	 * @param dc column step
+	 * @param dr row step
+	 * @return true if one of the lines is full
+	 */
+	private boolean lines(long[][] m, int col, int top, int dc, int dr) {
+		for (int base=0; base<top; base+=64) {
+			if (line(m, col, base, dc, dr)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * check whether the side has winLength connected tokens on a line going through
+	 * a cell of the column at or above fromRow. a move only changes the column
+	 * from its row up, so these are the only lines a move can complete.
+	 * the owned cells on both sides of the column are followed for at most winLength
+	 * columns, for 64 rows at a time.
+	 * @param side RED or YELLOW
+	 * @param col index of the column that changed
+	 * @param fromRow the lowest row that changed
+	 * @return true if the side has winLength tokens connected on one of those lines
+	 */
+	public boolean hasFourConnected(int side, int col, int fromRow) {
+		long[][] m=bits[side];
+		int top=height[col]-winLength+1;
+		for (int base=fromRow-winLength+1; base<top; base+=64) { //vertical
+			if (line(m, col, base, 0, 1)) {
+				return true;
+			}
+		}
+		for (int base=fromRow; base<height[col]; base+=64) {
+			long own=window(m[col], base);
+			if (own!=0 && (through(m, col, base, own, 0) //horizontal
+				|| through(m, col, base, own, -1) //major diagonal
+				|| through(m, col, base, own, 1))) { //minor diagonal
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * check the lines with a row step through 64 owned cells of a column.
+	 * a line of winLength is there when k cells to the left and winLength-1-k cells
+	 * to the right are owned, runs keeps the rows with k owned cells to the left.
+	 * @param m the masks of one side
+	 * @param col index of the column
+	 * @param base the first row of the window
+	 * @param own the owned cells of the column in the window
+	 * @param dr row step from one column to the next
+	 * @return true if one of the lines is full
+	 */
+	private boolean through(long[][] m, int col, int base, long own, int dr) {
+		runs[0]=-1L;
+		int left=0;
+		long acc=-1L;
+		for (int k=1; k<winLength && col-k>=0; k++) {
+			acc&=window(m[col-k], base-k*dr);
+			if (acc==0) {
+				break;
+			}
+			runs[k]=acc;
+			left=k;
+		}
+		long right=own;
+		for (int j=0; j<winLength; j++) {
+			if (j>0) {
+				if (col+j>=cols) {
+					return false;
+				}
+				right&=window(m[col+j], base+j*dr);
+				if (right==0) {
+					return false;
+				}
+			}
+			int need=winLength-1-j;
+			if (need<=left && (right & runs[need])!=0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * check the winLength long lines starting at column col and rows base to base+63.
+	 * @param m the masks of one side
+	 * @param col the first column of the line
+	 * @param base the first row of the window
+	 * @param dc column step
+	 * @param dr row step
+	 * @return true if any of the 64 lines is full
+	 */
+	private boolean line(long[][] m, int col, int base, int dc, int dr) {
+		long acc=-1L;
+		for (int k=0; k<winLength && acc!=0; k++) {
+			acc&=window(m[col+k*dc], base+k*dr);
+		}
+		return acc!=0;
+	}
+
+	/**
+	 * get 64 rows of a column starting at the given row, rows outside the column are zero.
+	 * @param c the words of the column for one side
+	 * @param offset the first row, can be negative
+	 * @return the rows as a long
+	 */
+	private static long window(long[] c, int offset) {
+		int w=offset>>6; //floor division, -1 for small negative offsets
+		int s=offset&63;
+		long lo=(w>=0 && w<c.length) ? c[w] : 0L;
+		if (s==0) {
+			return lo;
+		}
+		long hi=(w+1>=0 && w+1<c.length) ? c[w+1] : 0L;
+		return (lo>>>s) | (hi<<(64-s));
+	}
+
+	/**
+	 * move every bit of the column at or above the row up by one.
+	 * @param c the words of the column for one side
+	 * @param col index of the column
+	 * @param row the lowest row to move
+	 */
+	private void shiftUp(long[] c, int col, int row) {
+		int w=row>>>6;
+		int last=height[col]>>>6; //word that will hold the new top token
+		long word=c[w];
+		long keep=word & ((1L<<(row&63))-1);
+		long carry=word>>>63;
+		c[w]=keep | ((word & ~keep)<<1);
+		for (w++; w<=last; w++) {
+			word=c[w];
+			c[w]=(word<<1) | carry;
+			carry=word>>>63;
+		}
+	}
+
+	/**
+	 * remove the bit at the row and move every bit above it down by one.
+	 * @param c the words of the column for one side
+	 * @param col index of the column
+	 * @param row the row to remove
+	 */
+	private void shiftDown(long[] c, int col, int row) {
+		int w=row>>>6;
+		int last=(height[col]-1)>>>6; //word holding the current top token
+		long low=(1L<<(row&63))-1;
+		long word=c[w];
+		long next=(w<last) ? c[w+1] : 0L;
+		c[w]=(word & low) | ((word>>>1) & ~low) | (next<<63);
+		for (w++; w<=last; w++) {
+			word=next;
+			next=(w<last) ? c[w+1] : 0L;
+			c[w]=(word>>>1) | (next<<63);
+		}
+	}
+
+	/**
+	 * make sure the column has a word for the given row, doubling its words if needed.
+	 * the other columns keep their words.
+	 * @param col index of the column
+	 * @param row the row to hold
+	 */
+	private void ensureRow(int col, int row) {
+		int need=(row>>>6)+1;
+		int words=bits[RED][col].length;
+		if (need<=words) {
+			return;
+		}
+		while (words<need) {
+			words*=2;
+		}
+		bits[RED][col]=java.util.Arrays.copyOf(bits[RED][col], words);
+		bits[YELLOW][col]=java.util.Arrays.copyOf(bits[YELLOW][col], words);
+	}
+
+	/**
+	 * get the number of words kept for the tokens, to check that it follows the tokens.
+	 * @return words of both sides in every column
+	 */
+	long words() {
+		long total=0;
+		for (int i=0; i<cols; i++) {
+			total+=bits[RED][i].length+bits[YELLOW][i].length;
+		}
+		return total;
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		BitBoard b=new BitBoard(7);
+		b.drop(2, RED);
+		b.drop(2, YELLOW);
+		b.powerDrop(2, 1, RED);
+		if (b.height(2)==3 && b.get(2,0)==RED && b.get(2,1)==RED && b.get(2,2)==YELLOW
+			&& b.get(2,3)==EMPTY) {
+			System.out.println("Yay 1!");
+		}
+
+		if (b.pop(2)==RED && b.powerPop(2,1)==YELLOW && b.height(2)==1 && b.get(2,0)==RED) {
+			System.out.println("Yay 2!");
+		}
+
+		//a tower taller then one word
+		for (int i=0; i<100; i++) {
+			b.drop(5, i%3==0 ? RED : YELLOW);
+		}
+		b.powerDrop(5, 10, RED);
+		b.powerPop(5, 0);
+		if (b.height(5)==100 && b.get(5,9)==RED && b.get(5,98)==YELLOW && b.get(5,99)==RED
+			&& !b.hasFourConnected(RED) && !b.hasFourConnected(YELLOW)) {
+			System.out.println("Yay 3!");
+		}
+
+		//diagonal across columns 0 to 3
+		BitBoard d=new BitBoard(7);
+		for (int i=0; i<4; i++) {
+			for (int j=0; j<i; j++) {
+				d.drop(i, YELLOW);
+			}
+			d.drop(i, RED);
+		}
+		if (d.hasFourConnected(RED) && !d.hasFourConnected(YELLOW)) {
+			System.out.println("Yay 4!");
+		}
+
+		//the kept hash is the same as hashing every token again
+		java.util.Random random=new java.util.Random(4);
+		BitBoard z=new BitBoard(7);
+		boolean same=true;
+		for (int i=0; i<5000 && same; i++) {
+			int col=random.nextInt(7);
+			int h=z.height(col);
+			int kind=(h==0) ? 0 : random.nextInt(4);
+			if (kind==0) {
+				z.drop(col, random.nextInt(2));
+			}
+			else if (kind==1) {
+				z.powerDrop(col, random.nextInt(h+1), random.nextInt(2));
+			}
+			else if (kind==2) {
+				z.pop(col);
+			}
+			else {
+				z.powerPop(col, random.nextInt(h));
+			}
+			same=z.hash()==z.computeHash();
+		}
+		if (same && z.hash()!=new BitBoard(z).hash(YELLOW)) {
+			System.out.println("Yay 5!");
+		}
+
+		//copying a short board into a board that was taller keeps its words
+		BitBoard tall=new BitBoard(b);
+		tall.copyFrom(d);
+		tall.drop(0, YELLOW);
+		d.drop(0, YELLOW);
+		if (tall.get(5,0)==EMPTY && tall.get(0,1)==YELLOW && tall.hash()==d.hash()
+			&& tall.hash()==tall.computeHash() && tall.hasFourConnected(RED)) {
+			System.out.println("Yay 6!");
+		}
+
+		//the mirror hash is the hash of the board played with mirrored moves
+		BitBoard left=new BitBoard(7);
+		BitBoard right=new BitBoard(7);
+		boolean mirrored=true;
+		for (int i=0; i<5000 && mirrored; i++) {
+			int col=random.nextInt(7);
+			int h=left.height(col);
+			int kind=(h==0) ? Move.DROP : random.nextInt(4);
+			int move=Move.of(kind, col, (kind==Move.POWER_DROP) ? random.nextInt(h+1) : (kind==Move.POWER_POP) ? random.nextInt(h) : 0);
+			int side=random.nextInt(2);
+			left.play(move, side);
+			right.play(Move.mirror(move, 7), side);
+			mirrored=left.mirrorHash(side)==right.hash(side) && left.symmetricHash(side)==right.symmetricHash(side)
+				&& left.mirror==left.computeMirrorHash();
+		}
+		if (mirrored && left.mirrored(RED)!=right.mirrored(RED)) {
+			System.out.println("Yay 7!");
+		}
+
+		//a tower keeps words for its own tokens only, the short columns stay one word
+		BitBoard tower=new BitBoard(7);
+		for (int i=0; i<200000; i++) {
+			tower.drop(3, i%3==0 ? RED : YELLOW);
+		}
+		tower.drop(0, RED);
+		tower.drop(1, RED);
+		//the tower holds red in row 0, one empty cell is left in the bottom row
+		boolean open=!tower.hasFourConnected(RED) && !tower.hasFourConnected(YELLOW) && tower.countThrees(RED)==1;
+		tower.drop(2, RED);
+		if (open && tower.hasFourConnected(RED) && tower.words()==2*4096+2*6 && tower.countThrees(YELLOW)==0) {
+			System.out.println("Yay 8!");
+		}
+
+		//the kept tallest column is the tallest one after every move, copy and clear
+		BitBoard kept=new BitBoard(5);
+		BitBoard other=new BitBoard(5);
+		boolean tallestKept=true;
+		for (int i=0; i<20000 && tallestKept; i++) {
+			int col=random.nextInt(5);
+			int h=kept.height(col);
+			int kind=(h==0) ? 0 : random.nextInt(3);
+			if (kind==0) {
+				kept.drop(col, random.nextInt(2));
+			}
+			else if (kind==1) {
+				kept.powerDrop(col, random.nextInt(h+1), random.nextInt(2));
+			}
+			else {
+				kept.powerPop(col, random.nextInt(h));
+			}
+			if (i%1000==999) {
+				other.copyFrom(kept);
+				kept.clear();
+				kept.copyFrom(other);
+			}
+			int top=0;
+			for (int j=0; j<5; j++) {
+				top=Math.max(top, kept.height(j));
+			}
+			tallestKept=kept.tallest()==top;
+		}
+		if (tallestKept && kept.tallest()>64) {
+			System.out.println("Yay 9!");
+		}
+
+		//without hashing the tokens follow the same moves, turning it on hashes them again
+		java.util.Random moves=new java.util.Random(10);
+		BitBoard hashedBoard=new BitBoard(7);
+		BitBoard plain=new BitBoard(7);
+		plain.hashing(false);
+		boolean followed=true;
+		for (int i=0; i<3000 && followed; i++) {
+			int col=moves.nextInt(7);
+			int h=hashedBoard.height(col);
+			int kind=(h==0) ? Move.DROP : moves.nextInt(4);
+			int move=Move.of(kind, col, (kind==Move.POWER_DROP) ? moves.nextInt(h+1) : (kind==Move.POWER_POP) ? moves.nextInt(h) : 0);
+			int side=moves.nextInt(2);
+			hashedBoard.play(move, side);
+			plain.play(move, side);
+			for (int c=0; c<7; c++) {
+				followed&=plain.height(c)==hashedBoard.height(c) && plain.word(RED, c, 0)==hashedBoard.word(RED, c, 0);
+			}
+		}
+		BitBoard copy=new BitBoard(plain);
+		plain.hashing(true);
+		if (followed && plain.hash()==hashedBoard.hash() && plain.symmetricHash(RED)==hashedBoard.symmetricHash(RED)
+			&& copy.hash()==hashedBoard.hash()) {
+			System.out.println("Yay 10!");
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/** many standard positions side by side, evaluated all at once.
+ * the boards are kept as a struct of arrays: red[i], yellow[i] and mover[i] are
+ * board i, so a pass over the boards reads plain long arrays. a board of 7 columns
+ * at most 8 tokens tall with a win length of 4 fits one long per side, with the
+ * columns laid out like the fixed encoding of PositionCodec:
+ * <pre>
+ *   bit col*9+row   the token in row 0 to 7 of the column, bit col*9+8 is always 0
+ * </pre>
+ * the empty bit above every column keeps lines from running into the next column,
+ * so a line is checked for all cells at once with shifts and ands.
+ * run fills three results for every board:
+ * <pre>
+ *   wins    bit RED set when red connected four, bit YELLOW when yellow did
+ *   moves   the empty bits are the cells a drop of the mover lands in, the bit
+ *           above a column 8 tall is one too, the filled bits are the pops of the mover
+ *   scores  for the mover: empty cells that would complete four for it less those
+ *           of the other side, the ones a drop can reach count twice
+ * </pre>
+ * when the classes were built with the vector profile and the incubator module
+ * jdk.incubator.vector is there at run time, VectorBoardKernel does as many boards
+ * per instruction as the vectors hold. otherwise the same work is done one board
+ * at a time by the scalar code here, which is also the reference of the vector code.
+ * @author Fatemah Bahzad
+ */
+
+public final class BoardBatch {
+
+	/**
+	 * columns, tallest column and win length of the boards a batch holds.
+	 */
+	public static final int COLS = 7;
+	public static final int ROWS = 8;
+	public static final int WIN_LENGTH = 4;
+
+	/**
+	 * bits of a column, its rows and the empty bit above them.
+	 */
+	static final int FIELD_BITS = ROWS+1;
+	/**
+	 * the bottom cell of every column.
+	 */
+	static final long BOTTOM = bottom();
+	/**
+	 * every cell of the board, the empty bits above the columns left out.
+	 */
+	static final long CELLS = BOTTOM*((1L<<ROWS)-1);
+
+	/**
+	 * the boards, mover[i] is 0 when red is to move and -1 when yellow is.
+	 */
+	private long[] red;
+	private long[] yellow;
+	private long[] mover;
+	/**
+	 * the results of the last run.
+	 */
+	private long[] wins;
+	private long[] moves;
+	private long[] scores;
+	/**
+	 * number of boards in the batch.
+	 */
+	private int size;
+
+	/**
+	 * the vector code, or null when it was not built or can not be loaded.
+	 */
+	private static final Kernel KERNEL = loadKernel();
+
+	/**
+	 * work done on the boards from to to, the vector code gives one.
+	 */
+	interface Kernel {
+		/**
+		 * evaluate boards from to to.
+		 * @param red red masks
+		 * @param yellow yellow masks
+		 * @param mover 0 when red is to move, -1 when yellow is
+		 * @param wins where the wins are written
+		 * @param moves where the move masks are written
+		 * @param scores where the scores are written
+		 * @param from first board
+		 * @param to board after the last one
+		 */
+		void run(long[] red, long[] yellow, long[] mover, long[] wins, long[] moves, long[] scores, int from, int to);
+	}
+
+	/**
+	 * create an empty batch with room for capacity boards, it grows when more are added.
+	 * @param capacity number of boards expected
+	 */
+	public BoardBatch(int capacity) {
+		int n=Math.max(1, capacity);
+		red=new long[n];
+		yellow=new long[n];
+		mover=new long[n];
+		wins=new long[n];
+		moves=new long[n];
+		scores=new long[n];
+	}
+
+	/**
+	 * check whether the boards are evaluated with the vector code.
+	 * @return true if VectorBoardKernel was loaded
+	 */
+	public static boolean vectorized() {
+		return KERNEL!=null;
+	}
+
+	/**
+	 * get the bit of a cell in the masks.
+	 * @param col index of the column, 0 to COLS-1
+	 * @param row index of the row, 0 to ROWS
+	 * @return the bit of the cell
+	 */
+	public static long cell(int col, int row) {
+		return 1L<<(col*FIELD_BITS+row);
+	}
+
+	/**
+	 * get the number of boards in the batch.
+	 * @return size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * take every board out, the arrays are kept for the next ones.
+	 */
+	public void clear() {
+		size=0;
+	}
+
+	/**
+	 * add the position of a game, with its current player to move.
+	 * @param game the game, it is not changed
+	 * @return index of the board, or -1 if the game does not fit: ask the game itself then
+	 */
+	public int add(PowerConnectFour game) {
+		if (game.sizeCol()!=COLS || game.winLength()!=WIN_LENGTH || game.maxHeight()>ROWS) {
+			return -1;
+		}
+		long r=0L;
+		long y=0L;
+		for (int i=0; i<COLS; i++) {
+			for (int row=0; row<game.height(i); row++) {
+				if (game.get(i, row)==Token.RED) {
+					r|=cell(i, row);
+				}
+				else {
+					y|=cell(i, row);
+				}
+			}
+		}
+		return add(r, y, game.currentPlayer().ordinal());
+	}
+
+	/**
+	 * add the position of a bitboard.
+	 * @param board the board, it is not changed
+	 * @param side RED or YELLOW, the side to move
+	 * @return index of the board, or -1 if the board does not fit
+	 */
+	public int add(BitBoard board, int side) {
+		if (board.cols()!=COLS || board.winLength()!=WIN_LENGTH || board.tallest()>ROWS) {
+			return -1;
+		}
+		long r=0L;
+		long y=0L;
+		for (int i=0; i<COLS; i++) {
+			r|=board.word(BitBoard.RED, i, 0)<<(i*FIELD_BITS);
+			y|=board.word(BitBoard.YELLOW, i, 0)<<(i*FIELD_BITS);
+		}
+		return add(r, y, side);
+	}
+
+	/**
+	 * add a position given by its masks, the tokens of every column have to sit
+	 * on top of each other from row 0 and red and yellow must not share a cell.
+	 * the results of the boards already run are kept, the new board has none until the next run.
+	 * @param red cells of the red tokens
+	 * @param yellow cells of the yellow tokens
+	 * @param side RED or YELLOW, the side to move
+	 * @return index of the board
+	 */
+	public int add(long red, long yellow, int side) {
+		if (size==this.red.length) {
+			int n=size*2;
+			this.red=java.util.Arrays.copyOf(this.red, n);
+			this.yellow=java.util.Arrays.copyOf(this.yellow, n);
+			mover=java.util.Arrays.copyOf(mover, n);
+			wins=java.util.Arrays.copyOf(wins, n);
+			moves=java.util.Arrays.copyOf(moves, n);
+			scores=java.util.Arrays.copyOf(scores, n);
+		}
+		this.red[size]=red;
+		this.yellow[size]=yellow;
+		mover[size]=(side==BitBoard.RED) ? 0L : -1L;
+		return size++;
+	}
+
+	/**
+	 * evaluate every board, with the vector code when there is one.
+	 */
+	public void run() {
+		if (KERNEL!=null) {
+			KERNEL.run(red, yellow, mover, wins, moves, scores, 0, size);
+		}
+		else {
+			scalar(red, yellow, mover, wins, moves, scores, 0, size);
+		}
+	}
+
+	/**
+	 * evaluate every board one at a time, to compare with run.
+	 */
+	public void runScalar() {
+		scalar(red, yellow, mover, wins, moves, scores, 0, size);
+	}
+
+	/**
+	 * get the sides that connected four on the board, from the last run.
+	 * @param i index of the board
+	 * @return bit RED set for red and bit YELLOW set for yellow
+	 */
+	public int wins(int i) {
+		return (int) wins[i];
+	}
+
+	/**
+	 * get the legal drops and pops on the board, from the last run.
+	 * @param i index of the board
+	 * @return the empty cells drops land in and the filled cells the mover can pop
+	 */
+	public long moves(int i) {
+		return moves[i];
+	}
+
+	/**
+	 * get the score of the board for the mover, from the last run.
+	 * @param i index of the board
+	 * @return winning cells of the mover less those of the other side
+	 */
+	public int score(int i) {
+		return (int) scores[i];
+	}
+
+	/**
+	 * evaluate boards one at a time, the vector code ends with this for the boards left over.
+	 * @param red red masks
+	 * @param yellow yellow masks
+	 * @param mover 0 when red is to move, -1 when yellow is
+	 * @param wins where the wins are written
+	 * @param moves where the move masks are written
+	 * @param scores where the scores are written
+	 * @param from first board
+	 * @param to board after the last one
+	 */
+	static void scalar(long[] red, long[] yellow, long[] mover, long[] wins, long[] moves, long[] scores, int from, int to) {
+		for (int i=from; i<to; i++) {
+			long r=red[i];
+			long y=yellow[i];
+			long filled=r|y;
+			long own=r^((r^y)&mover[i]);
+			long other=filled^own;
+			long drops=filled+BOTTOM; //the carry stops on the first empty cell of every column
+			long empty=CELLS&~filled;
+			long mine=completes(own)&empty;
+			long theirs=completes(other)&empty;
+			wins[i]=((four(r)!=0L) ? 1L<<BitBoard.RED : 0L) | ((four(y)!=0L) ? 1L<<BitBoard.YELLOW : 0L);
+			moves[i]=drops | (own&BOTTOM);
+			scores[i]=Long.bitCount(mine)+Long.bitCount(mine&drops)-Long.bitCount(theirs)-Long.bitCount(theirs&drops);
+		}
+	}
+
+	/**
+	 * find the starts of the lines of four in a mask.
+	 * @param p the mask of one side
+	 * @return not 0 if there is a line
+	 */
+	private static long four(long p) {
+		long m=p&(p>>>1); //vertical
+		long found=m&(m>>>2);
+		m=p&(p>>>FIELD_BITS); //horizontal
+		found|=m&(m>>>2*FIELD_BITS);
+		m=p&(p>>>(FIELD_BITS-1)); //down to the right
+		found|=m&(m>>>2*(FIELD_BITS-1));
+		m=p&(p>>>(FIELD_BITS+1)); //up to the right
+		found|=m&(m>>>2*(FIELD_BITS+1));
+		return found;
+	}
+
+	/**
+	 * find the cells a token of the side would complete a line of four with.
+	 * @param p the mask of one side
+	 * @return the cells, filled ones and the empty bits above the columns too
+	 */
+	private static long completes(long p) {
+		long found=(p<<1)&(p<<2)&(p<<3); //on top of three
+		for (int s=FIELD_BITS-1; s<=FIELD_BITS+1; s++) {
+			long two=(p<<s)&(p<<2*s); //two before the cell
+			found|=two&((p<<3*s) | (p>>>s));
+			two=(p>>>s)&(p>>>2*s); //two after the cell
+			found|=two&((p<<s) | (p>>>3*s));
+		}
+		return found;
+	}
+
+	/**
+	 * the bit of row 0 of every column.
+	 * @return the mask
+	 */
+	private static long bottom() {
+		long mask=0L;
+		for (int i=0; i<COLS; i++) {
+			mask|=1L<<(i*FIELD_BITS);
+		}
+		return mask;
+	}
+
+	/**
+	 * load the vector code if it was built and its module is there.
+	 * @return the kernel, or null
+	 */
+	private static Kernel loadKernel() {
+		try {
+			return (Kernel) Class.forName("VectorBoardKernel").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			return null; //built without the vector profile or run without --add-modules jdk.incubator.vector
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		//red four in the bottom row, yellow three above it and yellow to move,
+		//both sides can complete a line with a drop: (4, 0) for red and (3, 1) for yellow
+		BitBoard b=new BitBoard(COLS);
+		for (int i=0; i<4; i++) {
+			b.drop(i, BitBoard.RED);
+		}
+		for (int i=0; i<3; i++) {
+			b.drop(i, BitBoard.YELLOW);
+		}
+		b.drop(5, BitBoard.YELLOW);
+		b.drop(6, BitBoard.RED);
+		BoardBatch batch=new BoardBatch(1);
+		int at=batch.add(b, BitBoard.YELLOW);
+		batch.run();
+		long moves=batch.moves(at);
+		if (batch.wins(at)==1<<BitBoard.RED && batch.score(at)==0 && (moves&cell(0, 2))!=0 && (moves&cell(3, 1))!=0
+			&& (moves&cell(5, 0))!=0 && (moves&cell(6, 0))==0 && (moves&cell(0, 0))==0) {
+			System.out.println("Yay 1!");
+		}
+
+		//random positions agree with the bitboard and the threat counters, vector code or not
+		java.util.Random random=new java.util.Random(25);
+		BoardBatch many=new BoardBatch(3);
+		java.util.List<BitBoard> boards=new java.util.ArrayList<>();
+		java.util.List<Integer> sides=new java.util.ArrayList<>();
+		for (int n=0; n<2003; n++) { //not a whole number of vectors
+			BitBoard z=new BitBoard(COLS);
+			int plies=random.nextInt(40);
+			for (int k=0; k<plies; k++) {
+				int col=random.nextInt(COLS);
+				int h=z.height(col);
+				int kind=(h==0) ? Move.DROP : random.nextInt(4);
+				if (h==ROWS && (kind==Move.DROP || kind==Move.POWER_DROP)) {
+					kind=Move.POP;
+				}
+				z.play(Move.of(kind, col, (kind==Move.POWER_DROP) ? random.nextInt(h+1) : (kind==Move.POWER_POP) ? random.nextInt(h) : 0), random.nextInt(2));
+			}
+			boards.add(z);
+			sides.add(random.nextInt(2));
+			many.add(z, sides.get(n));
+		}
+		many.run();
+		boolean same=true;
+		for (int n=0; n<boards.size() && same; n++) {
+			BitBoard z=boards.get(n);
+			int side=sides.get(n);
+			ThreatCounters t=z.threats();
+			int wins=(z.hasFourConnected(BitBoard.RED) ? 1 : 0) | (z.hasFourConnected(BitBoard.YELLOW) ? 2 : 0);
+			long legal=0L;
+			int score=0;
+			for (int i=0; i<COLS; i++) {
+				int h=z.height(i);
+				legal|=cell(i, h) | ((h>0 && z.get(i, 0)==side) ? cell(i, 0) : 0L);
+				for (int row=h; row<ROWS; row++) {
+					int weight=(row==h) ? 2 : 1;
+					score+=(t.completes(i, row, side) ? weight : 0) - (t.completes(i, row, 1-side) ? weight : 0);
+				}
+			}
+			same&=many.wins(n)==wins && many.moves(n)==legal && many.score(n)==score;
+		}
+		long[] run=java.util.Arrays.copyOf(many.scores, many.size());
+		many.runScalar();
+		same&=java.util.Arrays.equals(run, java.util.Arrays.copyOf(many.scores, many.size()));
+		if (same) {
+			System.out.println("Yay 2!");
+		}
+
+		//games are added with their player to move, a tower does not fit
+		PowerConnectFour game=new PowerConnectFour();
+		game.drop(3);
+		PowerConnectFour tall=new PowerConnectFour();
+		for (int i=0; i<ROWS+1; i++) {
+			tall.powerDrop(3, 0);
+		}
+		BoardBatch games=new BoardBatch(1);
+		int g=games.add(game);
+		games.run();
+		long before=games.moves(g);
+		games.add(new BitBoard(COLS), BitBoard.RED); //the arrays grow, the results of board 0 stay
+		if (g==0 && games.add(tall)==-1 && games.size()==2 && games.moves(g)==before
+			&& (before&cell(3, 0))==0 && (before&cell(3, 1))!=0 && games.wins(g)==0) {
+			System.out.println("Yay 3! (" + (vectorized() ? "vector" : "scalar") + ")");
+		}
+	}
+}
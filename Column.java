@@ -1,5 +1,8 @@
 /** a generic class that implements the dynamic array.
- * list used as column in the game
+ * list used as column in the game.
+ * the items are kept in a ring buffer starting at head, so removing or
+ * inserting at the bottom is O(1) and every other insert or delete
+ * only shifts the shorter side of the index.
  * @param <T> hold any item to add to the grid
  * @author Fatemah Bahzad
  */
@@ -16,6 +19,10 @@ public class Column<T> {
 	 data is an array to hold tokens in it.
 	 */
 	private T[] data;
+	/**
+	 index in data of the first item (index 0) of the column.
+	 */
+	private int head;
 	/**
 	 number of tokens in the column.
 	 */
@@ -31,6 +38,7 @@ public class Column<T> {
 	@SuppressWarnings("unchecked")
 	public Column() {
 		data= (T[]) new Object[DEFAULT_CAPACITY];
+		head=0;
 		size=0;
 	
 	}
@@ -45,6 +53,7 @@ public class Column<T> {
 			throw new IllegalArgumentException("Capacity must be positive");
 		}
 		data= (T[]) new Object[initialCapacity];
+		head=0;
 		size=initialCapacity;
 	}
 	
@@ -74,11 +83,11 @@ public class Column<T> {
 	  * @return old item at that index.
 	  */
 	public T set(int index, T value) {
-		if (index<0|| index>size) {
+		if (index<0|| index>size|| index==data.length) {
 			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
 		}
-		temp=data[index];//to return the old value
-		data[index]=value;
+		temp=data[slot(index)];//to return the old value
+		data[slot(index)]=value;
 		return temp; 
 		
 	}
@@ -88,10 +97,10 @@ public class Column<T> {
 	  * @return return item from the index
 	  */
 	public T get(int index) {
-		if (index<0|| index>size) {
+		if (index<0|| index>size|| index==data.length) {
 			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
 		}
-		return data[index]; 
+		return data[slot(index)]; 
 				
 	}
 	/**
@@ -99,18 +108,11 @@ public class Column<T> {
 	  * @param value to add 
 	  * @return 
 	  */
-	@SuppressWarnings("unchecked")
 	public void add(T value) {
 		if (size==data.length) { //if the list is full
-			//double cap
-			T[] data2=(T[]) new Object[size*2];
-			
-			for (int i=0; i<size; i++) {
-				data2[i]=data[i];
-			}
-			data=data2;
+			resize(size*2); //double cap
 		}
-		data[size]=value; //add it to the end after changing the capacity
+		data[slot(size)]=value; //add it to the end after changing the capacity
 		size++; 
 	}
 
@@ -121,7 +123,6 @@ public class Column<T> {
 	  *@param value to add 
 	  * @return 
 	  */
-	@SuppressWarnings("unchecked")
 	public void add(int index, T value) {
 		//check the index
 		if (index<0|| index>size) {
@@ -129,19 +130,20 @@ public class Column<T> {
 		}
 		//make sure we have enough space
 		if (size==data.length) {
-			//double cap
-			T[] data2=(T[]) new Object[size*2];
-			for (int i=0; i<size; i++) {
-				data2[i]=data[i];
-			}
-			data=data2;
+			resize(size*2); //double cap
 		}
 				
-		//shifting 
-		//try using the same thing for remove
-		for (int i=size;i>index; i--) //start from the end
-			data[i]=data[i-1];
-		data[index]=value;// insert 
+		//shifting the shorter side
+		if (index<size/2) {
+			head=(head==0) ? data.length-1 : head-1; //move the bottom down by one
+			for (int i=0; i<index; i++) 
+				data[slot(i)]=data[slot(i+1)];
+		}
+		else {
+			for (int i=size;i>index; i--) //start from the end
+				data[slot(i)]=data[slot(i-1)];
+		}
+		data[slot(index)]=value;// insert 
 		size++;
 	}
 
@@ -152,41 +154,56 @@ public class Column<T> {
 	  * @param index to remove the value from 
 	  * @return the deleted item 
 	  */
-//other way to remove the index by shifting 
-// 	for(int i=index;i<size-1;i++){
-// 	        data[i]=data[i+1];
-// 	      }
-// 	      data[size-1]=null;
-// 	      size--;
-// 	    
-	@SuppressWarnings("unchecked")
 	public T delete(int index) {
-		temp=get(index); //get the element to return it 
 		if (index<0|| index>=size) {
 			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
 		}
-		T[] data2=(T[]) new Object[data.length];//create a new array with the same length
-		for(int i=0,j=0; i<data.length;i++) {
-			if (i==index) {//skip the index
-				size--; //remove it from the size
-				continue;
-			}
-			data2[j++]=data[i];
+		temp=data[slot(index)]; //get the element to return it 
+		//shifting the shorter side over the index
+		if (index<size/2) {
+			for (int i=index; i>0; i--)
+				data[slot(i)]=data[slot(i-1)];
+			data[head]=null;
+			head=(head+1==data.length) ? 0 : head+1; //the bottom moved up by one
 		}
+		else {
+			for (int i=index; i<size-1; i++)
+				data[slot(i)]=data[slot(i+1)];
+			data[slot(size-1)]=null;
+		}
+		size--; //remove it from the size
 		
-		data=data2;
 		if ((size<(double)data.length/3) && data.length/2>DEFAULT_CAPACITY ) {
-			data2=(T[]) new Object[data.length/2]; //cutting the capacity in half if the size is 
+			resize(data.length/2); //cutting the capacity in half if the size is 
 			//less then 1/3 of it and if it is not less then DEFAULT_CAPACITY when halved
-			for (int i=0; i<data2.length; i++) {
-				data2[i]=data[i];
-			
-			}
-			data=data2;
 		}
 		return temp;
 	}  
 
+	/**
+	  * get the place in data of the item at the index.
+	  * @param index of the item
+	  * @return index in data
+	  */
+	private int slot(int index) {
+		int i=head+index;
+		return (i>=data.length) ? i-data.length : i; //wrap around the end of data
+	}
+
+	/**
+	  * copy the items into a new array of the given capacity, starting at head 0.
+	  * @param capacity the new capacity
+	  */
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		T[] data2=(T[]) new Object[capacity];
+		int first=Math.min(size, data.length-head); //items before the wrap
+		System.arraycopy(data, head, data2, 0, first);
+		System.arraycopy(data, 0, data2, first, size-first);
+		data=data2;
+		head=0;
+	}
+
 	
 	
 	
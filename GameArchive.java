@@ -0,0 +1,539 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+import java.util.zip.CRC32C;
+
+/** reads a game record archive written by GameRecordWriter.
+ * the file is memory mapped in regions of up to 1 GB, so archives of many GB
+ * are read without copying them, and a game can be replayed into a
+ * PowerConnectFour straight from the mapped bytes without making any objects.
+ * replay plays the moves the way PowerConnectFourGUI does: invalid moves are
+ * counted and skipped, and the game stops at Q or when a player connects four.
+ * its result is packed into a long, read it with moves, invalid, winner and quit.
+ * an archive is not safe to share between threads, open one for each thread,
+ * they share the mapped pages.
+ * @author Fatemah Bahzad
+ */
+
+public class GameArchive implements AutoCloseable {
+
+	/**
+	 * log2 of the bytes mapped by every region.
+	 */
+	private static final int REGION_BITS = 30;
+
+	/**
+	 * tokens by side index.
+	 */
+	private static final Token[] TOKENS = Token.values();
+
+	private final FileChannel channel;
+	private final long size;
+	private final int regionBits;
+	private final long regionMask;
+	private final MappedByteBuffer[] regions;
+	/**
+	 * a view of every region for the checksums, moved instead of the region itself.
+	 */
+	private final ByteBuffer[] views;
+	/**
+	 * size of the game the moves are for, from the header.
+	 */
+	private final int columns;
+	private final int minRows;
+	private final long indexOffset;
+	private final long games;
+	private final int indexChecksum;
+	/**
+	 * checksum of one game, reused.
+	 */
+	private final CRC32C crc=new CRC32C();
+	/**
+	 * offset after the last varint read.
+	 */
+	private long next;
+
+	/**
+	*open an archive.
+	*@param path file of the archive
+	*@throws IOException if the file can not be read or is no archive
+	*/
+	public GameArchive(Path path) throws IOException {
+		this(path, REGION_BITS);
+	}
+
+	/**
+	*open an archive with regions of 2^regionBits bytes, small regions test the
+	*games that cross from one region to the next.
+	*@param path file of the archive
+	*@param regionBits log2 of the bytes of a region, 4 to 30
+	*@throws IOException if the file can not be read or is no archive
+	*/
+	GameArchive(Path path, int regionBits) throws IOException {
+		this.regionBits=regionBits;
+		this.regionMask=(1L<<regionBits)-1;
+		channel=FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			size=channel.size();
+			if (size<GameRecordWriter.HEADER_BYTES+GameRecordWriter.FOOTER_BYTES) {
+				throw new IOException("Not a game archive: " + path);
+			}
+			regions=new MappedByteBuffer[(int) ((size+regionMask)>>>regionBits)];
+			views=new ByteBuffer[regions.length];
+			for (int i=0; i<regions.length; i++) {
+				long start=(long) i<<regionBits;
+				regions[i]=channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L<<regionBits, size-start));
+				views[i]=regions[i].duplicate();
+			}
+			long footer=size-GameRecordWriter.FOOTER_BYTES;
+			if (readInt(0)!=GameRecordWriter.MAGIC || readInt(footer+20)!=GameRecordWriter.END_MAGIC) {
+				throw new IOException("Not a game archive: " + path);
+			}
+			if (readInt(4)!=GameRecordWriter.VERSION) {
+				throw new IOException("Unknown game archive version " + readInt(4));
+			}
+			columns=readInt(8);
+			minRows=readInt(12);
+			if (columns!=GameRecordWriter.COLUMNS || minRows!=GameRecordWriter.MIN_ROWS) {
+				throw new IOException("Game archive for " + columns + " columns and " + minRows
+					+ " rows, only " + GameRecordWriter.COLUMNS + " and " + GameRecordWriter.MIN_ROWS + " are known: " + path);
+			}
+			indexOffset=readLong(footer);
+			games=readLong(footer+8);
+			indexChecksum=readInt(footer+16);
+			if (indexOffset<GameRecordWriter.HEADER_BYTES
+				|| indexOffset+games*GameRecordWriter.ENTRY_BYTES!=footer) {
+				throw new IOException("Damaged game archive index: " + path);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	*get the number of games.
+	*@return games in the archive
+	*/
+	public long games() {
+		return games;
+	}
+
+	/**
+	*get the number of columns of the games.
+	*@return columns from the header
+	*/
+	public int columns() {
+		return columns;
+	}
+
+	/**
+	*get the least number of rows of the games.
+	*@return rows from the header
+	*/
+	public int minRows() {
+		return minRows;
+	}
+
+	/**
+	*get the number of bytes of a game.
+	*@param game index of the game
+	*@return bytes of its moves
+	*/
+	public int length(long game) {
+		return readInt(entry(game)+8);
+	}
+
+	/**
+	*check the checksum of one game.
+	*@param game index of the game
+	*@return true if the moves are as they were written
+	*/
+	public boolean verify(long game) {
+		long entry=entry(game);
+		long start=readLong(entry);
+		int length=readInt(entry+8);
+		if (start<GameRecordWriter.HEADER_BYTES || start+length>indexOffset) {
+			return false;
+		}
+		crc.reset();
+		update(start, length);
+		return (int) crc.getValue()==readInt(entry+12);
+	}
+
+	/**
+	*check the checksum of the index and of every game.
+	*@return the first damaged game, games() if only the index is damaged, or -1 if all are fine
+	*/
+	public long verify() {
+		for (long i=0; i<games; i++) {
+			if (!verify(i)) {
+				return i;
+			}
+		}
+		crc.reset();
+		update(indexOffset, games*GameRecordWriter.ENTRY_BYTES);
+		return ((int) crc.getValue()==indexChecksum) ? -1 : games;
+	}
+
+	/**
+	*replay a game into the given game, which is reset first.
+	*@param game index of the game
+	*@param target where the game is played, of the size in the header, it holds the last position after
+	*@return the result, read it with moves, invalid, winner and quit
+	*@throws IllegalArgumentException if the target is not of the size in the header
+	*@throws IllegalStateException if the game is damaged and runs out of its bytes
+	*/
+	public long replay(long game, PowerConnectFour target) {
+		if (target.sizeCol()!=columns || target.minRows()!=minRows) {
+			throw new IllegalArgumentException("Game of " + target.sizeCol() + " columns and " + target.minRows()
+				+ " rows, the archive is for " + columns + " and " + minRows);
+		}
+		long entry=entry(game);
+		long pos=readLong(entry);
+		long end=pos+readInt(entry+8);
+		if (pos<GameRecordWriter.HEADER_BYTES || end<pos || end>indexOffset) {
+			throw new IllegalStateException("Damaged game " + game + " in the archive");
+		}
+		target.reset();
+		int moves=0;
+		int invalid=0;
+		Token player=target.currentPlayer();
+		while (pos<end) {
+			int b=readByte(pos++);
+			int kind=b>>>GameRecordWriter.KIND_SHIFT;
+			int col=b & 0x3F;
+			moves++;
+			if (col==GameRecordWriter.SPECIAL) {
+				if (kind==Move.DROP) {
+					return result(moves, invalid, -1, true);
+				}
+				invalid++; //a word that is no move
+			}
+			else {
+				if (col==GameRecordWriter.ESCAPE) {
+					col=varint(game, pos, end);
+					pos=next;
+				}
+				int row=0;
+				if (kind==Move.POWER_DROP || kind==Move.POWER_POP) {
+					row=readByte(game, pos++, end);
+					if (row==GameRecordWriter.ROW_ESCAPE) {
+						row=varint(game, pos, end);
+						pos=next;
+					}
+				}
+				if (!play(target, kind, col, row)) {
+					invalid++;
+				}
+			}
+			//the player who moved is checked first, as in the game
+			if (target.hasFourConnected(player)) {
+				return result(moves, invalid, player.ordinal(), false);
+			}
+			player=target.currentPlayer();
+			if (target.hasFourConnected(player)) {
+				return result(moves, invalid, player.ordinal(), false);
+			}
+		}
+		return result(moves, invalid, -1, false);
+	}
+
+	/**
+	*get the number of moves played, with the invalid ones and a Q.
+	*@param result the result returned by replay
+	*@return moves
+	*/
+	public static int moves(long result) {
+		return (int) (result & 0xFFFFFFFFL);
+	}
+
+	/**
+	*get the number of invalid moves.
+	*@param result the result returned by replay
+	*@return invalid moves
+	*/
+	public static int invalid(long result) {
+		return (int) (result>>>32) & 0x1FFFFFFF;
+	}
+
+	/**
+	*get the winner.
+	*@param result the result returned by replay
+	*@return the token of the winner, or null if nobody connected four
+	*/
+	public static Token winner(long result) {
+		return ((result & 1L<<62)==0) ? null : TOKENS[(int) (result>>>63)];
+	}
+
+	/**
+	*check whether the game ended with Q.
+	*@param result the result returned by replay
+	*@return true if the game was quit
+	*/
+	public static boolean quit(long result) {
+		return (result & 1L<<61)!=0;
+	}
+
+	/**
+	*close the file, the mapped regions stay until they are garbage collected.
+	*@throws IOException if the file can not be closed
+	*/
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	*make a move as it was written, valid or not.
+	*@param target the game
+	*@param kind kind of the move, as in Move
+	*@param col the column
+	*@param row the row, only for power moves
+	*@return true if it was a valid move
+	*/
+	static boolean play(PowerConnectFour target, int kind, int col, int row) {
+		switch (kind) {
+			case Move.DROP:
+				return target.drop(col);
+			case Move.POP:
+				return target.pop(col);
+			case Move.POWER_DROP:
+				return target.powerDrop(col, row);
+			default:
+				return target.powerPop(col, row);
+		}
+	}
+
+	/**
+	*pack a result, read it with moves, invalid, winner and quit.
+	*@param moves moves played
+	*@param invalid invalid moves
+	*@param winner side of the winner or -1
+	*@param quit true if the game ended with Q
+	*@return the result
+	*/
+	static long result(int moves, int invalid, int winner, boolean quit) {
+		return (moves & 0xFFFFFFFFL) | ((long) Math.min(invalid, 0x1FFFFFFF)<<32)
+			| (quit ? 1L<<61 : 0L) | ((winner<0) ? 0L : 1L<<62 | (long) winner<<63);
+	}
+
+	/**
+	*get the place of the index entry of a game.
+	*@param game index of the game
+	*@return offset of the entry in the file
+	*/
+	private long entry(long game) {
+		if (game<0 || game>=games) {
+			throw new IndexOutOfBoundsException("Game " + game + " out of bounds for " + games + " games");
+		}
+		return indexOffset+game*GameRecordWriter.ENTRY_BYTES;
+	}
+
+	/**
+	*read a zigzag varint of a game, the offset after it is left in next.
+	*@param game index of the game
+	*@param pos offset of its first byte
+	*@param end offset after the last byte of the game
+	*@return the number
+	*@throws IllegalStateException if the varint runs past the end of the game
+	*/
+	private int varint(long game, long pos, long end) {
+		int zigzag=0;
+		int b;
+		int shift=0;
+		do {
+			b=readByte(game, pos++, end);
+			zigzag|=(b & 0x7F)<<shift;
+			shift+=7;
+		} while ((b & 0x80)!=0 && shift<35);
+		next=pos;
+		return (zigzag>>>1)^-(zigzag & 1);
+	}
+
+	/**
+	*read an unsigned byte of a game.
+	*@param game index of the game
+	*@param pos offset in the file
+	*@param end offset after the last byte of the game
+	*@return the byte, 0 to 255
+	*@throws IllegalStateException if pos is not before the end of the game
+	*/
+	private int readByte(long game, long pos, long end) {
+		if (pos>=end) {
+			throw new IllegalStateException("Damaged game " + game + " in the archive, a move runs past its end");
+		}
+		return readByte(pos);
+	}
+
+	/**
+	*add bytes of the file to the checksum, region by region.
+	*@param pos offset of the first byte
+	*@param length number of bytes
+	*/
+	private void update(long pos, long length) {
+		while (length>0) {
+			ByteBuffer view=views[(int) (pos>>>regionBits)];
+			int start=(int) (pos & regionMask);
+			int n=(int) Math.min(length, view.capacity()-start);
+			view.limit(start+n).position(start);
+			crc.update(view);
+			pos+=n;
+			length-=n;
+		}
+	}
+
+	/**
+	*read an unsigned byte.
+	*@param pos offset in the file
+	*@return the byte, 0 to 255
+	*/
+	private int readByte(long pos) {
+		return regions[(int) (pos>>>regionBits)].get((int) (pos & regionMask)) & 0xFF;
+	}
+
+	/**
+	*read a big endian int, it may cross two regions.
+	*@param pos offset in the file
+	*@return the int
+	*/
+	private int readInt(long pos) {
+		int start=(int) (pos & regionMask);
+		MappedByteBuffer region=regions[(int) (pos>>>regionBits)];
+		if (start+4<=region.capacity()) {
+			return region.getInt(start);
+		}
+		int value=0;
+		for (int i=0; i<4; i++) {
+			value=value<<8 | readByte(pos+i);
+		}
+		return value;
+	}
+
+	/**
+	*read a big endian long, it may cross two regions.
+	*@param pos offset in the file
+	*@return the long
+	*/
+	private long readLong(long pos) {
+		return ((long) readInt(pos)<<32) | (readInt(pos+4) & 0xFFFFFFFFL);
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*@throws IOException if the test archive can not be written
+	*/
+	public static void main(String[] args) throws IOException {
+		String[] texts={
+			"D 0\nD 1\nD 0\nD 1\nD 0\nD 1\nD 0\nD 1\n",
+			"D 3\nPD 3 0\nX\nP 3\nPP 3 300\nD -1\nD 100\nQ\nD 4\n",
+			"D 2\nD 2\nPD 2 1\nPP 2 2\nP 2\n"
+		};
+		Path path=Files.createTempFile("games", ".pc4r");
+		long damaged=GameRecordWriter.HEADER_BYTES;
+		try {
+			try (GameRecordWriter writer=new GameRecordWriter(path)) {
+				for (int i=0; i<300; i++) {
+					writer.convert(new Scanner(texts[i%texts.length]));
+				}
+			}
+			//one byte for a drop, two for a power move
+			try (GameArchive archive=new GameArchive(path)) {
+				if (archive.games()==300 && archive.length(0)==8 && archive.length(2)==7
+					&& archive.verify()==-1) {
+					System.out.println("Yay 1!");
+				}
+				damaged+=archive.length(0)+archive.length(1); //first byte of game 2
+
+				PowerConnectFour game=new PowerConnectFour();
+				long first=archive.replay(0, game);
+				long second=archive.replay(1, game);
+				if (winner(first)==Token.RED && moves(first)==7 && invalid(first)==0 && !quit(first)
+					&& quit(second) && moves(second)==8 && invalid(second)==5 && winner(second)==null) {
+					System.out.println("Yay 2!");
+				}
+
+				//the same position as playing the moves by hand
+				long third=archive.replay(2, game);
+				PowerConnectFour hand=new PowerConnectFour();
+				hand.drop(2); hand.drop(2); hand.powerDrop(2,1); hand.powerPop(2,2); hand.pop(2);
+				if (game.positionHash()==hand.positionHash() && moves(third)==5 && invalid(third)==0) {
+					System.out.println("Yay 3!");
+				}
+			}
+
+			//tiny regions, so games and index entries cross from one region to the next
+			try (GameArchive archive=new GameArchive(path, 4)) {
+				PowerConnectFour game=new PowerConnectFour();
+				boolean same=archive.verify()==-1;
+				for (long i=0; i<archive.games() && same; i++) {
+					same=archive.replay(i, game)==archive.replay(i%3, new PowerConnectFour());
+				}
+				if (same) {
+					System.out.println("Yay 4!");
+				}
+			}
+
+			//a damaged byte is found by the checksum
+			try (java.io.RandomAccessFile file=new java.io.RandomAccessFile(path.toFile(), "rw")) {
+				file.seek(damaged);
+				file.write(file.read()^1);
+			}
+			try (GameArchive archive=new GameArchive(path)) {
+				if (archive.verify()==2 && !archive.verify(2) && archive.verify(1)) {
+					System.out.println("Yay 5!");
+				}
+			}
+
+			//a game cut short stops at its end, the size in the header must be the game's
+			try (java.io.RandomAccessFile file=new java.io.RandomAccessFile(path.toFile(), "rw")) {
+				file.seek(file.length()-GameRecordWriter.FOOTER_BYTES);
+				file.seek(file.readLong()+GameRecordWriter.ENTRY_BYTES+8);
+				file.writeInt(2); //game 1 ends before the row of its power drop
+			}
+			boolean stopped=false;
+			boolean refused=false;
+			try (GameArchive archive=new GameArchive(path)) {
+				try {
+					archive.replay(1, new PowerConnectFour());
+				}
+				catch (IllegalStateException e) {
+					stopped=true;
+				}
+				try {
+					archive.replay(0, new PowerConnectFour(8, 6, 4));
+				}
+				catch (IllegalArgumentException e) {
+					refused=archive.columns()==7 && archive.minRows()==6;
+				}
+			}
+			try (java.io.RandomAccessFile file=new java.io.RandomAccessFile(path.toFile(), "rw")) {
+				file.seek(8);
+				file.writeInt(8);
+			}
+			try {
+				new GameArchive(path).close();
+				refused=false;
+			}
+			catch (IOException e) {
+				//an archive for another size is not opened
+			}
+			if (stopped && refused) {
+				System.out.println("Yay 6!");
+			}
+		}
+		finally {
+			Files.delete(path);
+		}
+	}
+}
@@ -0,0 +1,804 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/** a write ahead journal of the games of a GameSessions, so they survive a crash.
+ * every accepted move is appended as a record of 24 bytes: the id of the game,
+ * its version after the move, the move packed as in Move (or CREATE or REMOVE)
+ * and a crc32c of the other 20 bytes. records go to segment files
+ * journal-N.log in a directory.
+ * sync makes records durable with group commit: the first writer that finds no
+ * flush running writes every record appended so far and forces the file once,
+ * the writers that came in meanwhile wait and are covered by the same force.
+ * when a write or a force fails the journal stops: the records of the failed
+ * group may be on disk, torn or missing, so no record after the last good force
+ * is called durable and every append, sync and compact from then on throws.
+ * the torn end stays in the last segment, where opening the journal again cuts it off.
+ * compact starts a new segment, writes every game into snapshot-N.snap (as PositionCodec bytes) and
+ * deletes the older segments. the snapshot also keeps the highest id the journal has seen,
+ * so the id of a game removed before the compact is not given again after a restart. a game that moved while it was being saved is in
+ * the snapshot and in the new segment, so replay skips records whose version
+ * the snapshot already has. on startup the newest snapshot is loaded and the
+ * segments after it are replayed, a torn record at the end of the last segment
+ * is cut off.
+ * @author Fatemah Bahzad
+ */
+
+public class GameJournal implements AutoCloseable {
+
+	/**
+	 * move of a record that creates or removes a game.
+	 */
+	static final int CREATE = -2;
+	static final int REMOVE = -3;
+
+	/**
+	 * bytes of a record.
+	 */
+	private static final int RECORD_BYTES = 24;
+	/**
+	 * first int of a snapshot.
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x50433453;
+
+	/** called for every game while the journal is read back.
+	 */
+	interface Replay {
+		/**
+		*a game saved in the snapshot.
+		*@param id the id of the game
+		*@param version its version
+		*@param game its state, reused for the next game
+		*/
+		void restore(long id, long version, PowerConnectFour game);
+
+		/**
+		*a record of the segments.
+		*@param id the id of the game
+		*@param version the version after the record
+		*@param move the move, CREATE or REMOVE
+		*/
+		void record(long id, long version, int move);
+	}
+
+	/** called with every game while a snapshot is written.
+	 */
+	interface Saver {
+		/**
+		*save one game.
+		*@param id the id of the game
+		*@param version its version
+		*@param game its state, not changed while it is saved
+		*@throws IOException if the snapshot can not be written
+		*/
+		void save(long id, long version, PowerConnectFour game) throws IOException;
+	}
+
+	/** visits every game, holding its lock while the saver runs.
+	 */
+	interface Games {
+		/**
+		*pass every game to the saver.
+		*@param saver gets the games
+		*@throws IOException if the saver throws it
+		*/
+		void forEach(Saver saver) throws IOException;
+	}
+
+	private final Path dir;
+	private final ReentrantLock lock=new ReentrantLock();
+	private final Condition flushed=lock.newCondition();
+	/**
+	 * held for a whole compact, two of them would write the same snapshot.tmp.
+	 */
+	private final ReentrantLock compacting=new ReentrantLock();
+	/**
+	 * records appended and not written yet, and the buffer being written.
+	 */
+	private ByteBuffer pending=ByteBuffer.allocate(1<<16);
+	private ByteBuffer spare=ByteBuffer.allocate(1<<16);
+	/**
+	 * records appended and records forced to disk.
+	 */
+	private long appended;
+	private long durable;
+	private boolean flushing;
+	/**
+	 * the first write or force that failed, null while the journal works.
+	 */
+	private IOException failure;
+	private long syncs;
+	/**
+	 * the highest id of a record appended or read back.
+	 */
+	private long lastId;
+	private FileChannel segment;
+	private long segmentNumber;
+	private final CRC32C crc=new CRC32C();
+
+	/**
+	*open the journal in a directory, creating it if needed.
+	*call replay before appending, then every new record goes to a new segment.
+	*@param dir the directory of the journal
+	*@throws IOException if the directory can not be used
+	*/
+	public GameJournal(Path dir) throws IOException {
+		this.dir=dir;
+		Files.createDirectories(dir);
+	}
+
+	/**
+	*read the newest snapshot and the segments after it, then start a new segment.
+	*@param replay gets the games and records in order
+	*@throws IOException if a snapshot or a segment before the last one is damaged
+	*/
+	void replay(Replay replay) throws IOException {
+		List<Long> snapshots=numbers("snapshot-", ".snap");
+		List<Long> segments=numbers("journal-", ".log");
+		long first=0;
+		if (!snapshots.isEmpty()) {
+			first=snapshots.get(snapshots.size()-1);
+			lastId=Math.max(lastId, readSnapshot(file("snapshot-", first, ".snap"), replay));
+		}
+		long last=first;
+		for (int i=0; i<segments.size(); i++) {
+			long n=segments.get(i);
+			if (n>=first) {
+				readSegment(file("journal-", n, ".log"), replay, i==segments.size()-1);
+			}
+			last=Math.max(last, n);
+		}
+		lock.lock();
+		try {
+			openSegment(last+1);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*add a record, it is not durable before sync returns for it.
+	*@param id the id of the game
+	*@param version the version of the game after the record
+	*@param move the move, CREATE or REMOVE
+	*@return the number of the record, to pass to sync
+	*@throws IOException if a write of the journal failed before
+	*/
+	long append(long id, long version, int move) throws IOException {
+		lock.lock();
+		try {
+			failed();
+			if (pending.remaining()<RECORD_BYTES) {
+				ByteBuffer bigger=ByteBuffer.allocate(pending.capacity()*2);
+				pending.flip();
+				bigger.put(pending);
+				pending=bigger;
+			}
+			int start=pending.position();
+			pending.putLong(id).putLong(version).putInt(move);
+			lastId=Math.max(lastId, id);
+			crc.reset();
+			crc.update(pending.array(), start, RECORD_BYTES-4);
+			pending.putInt((int) crc.getValue());
+			return ++appended;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*wait until the record is on disk, together with every record before it.
+	*@param record the number returned by append
+	*@throws IOException if the journal can not be written
+	*/
+	void sync(long record) throws IOException {
+		lock.lock();
+		try {
+			while (durable<record) {
+				failed();
+				if (flushing) {
+					flushed.awaitUninterruptibly();
+					continue;
+				}
+				//this writer leads the group: it writes everything appended so far
+				flushing=true;
+				ByteBuffer batch=pending;
+				pending=spare;
+				long end=appended;
+				FileChannel channel=segment;
+				IOException failure=null;
+				lock.unlock();
+				try {
+					write(channel, batch);
+					channel.force(false);
+				}
+				catch (IOException e) {
+					failure=e;
+				}
+				finally {
+					lock.lock();
+				}
+				batch.clear();
+				spare=batch;
+				flushing=false;
+				if (failure==null) {
+					durable=end;
+					syncs++;
+				}
+				else {
+					this.failure=failure; //the waiters for the batch throw too
+				}
+				flushed.signalAll();
+				if (failure!=null) {
+					throw failure;
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*get the highest id of a game the journal has seen, removed games and compacts included.
+	*@return the id, 0 if there was no game
+	*/
+	long lastId() {
+		lock.lock();
+		try {
+			return lastId;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*get the number of times the journal was forced to disk by sync.
+	*@return forces, fewer than the records when writers were grouped
+	*/
+	public long syncs() {
+		lock.lock();
+		try {
+			return syncs;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*write every game into a new snapshot and delete the segments it replaces.
+	*a second call waits until the first is done.
+	*@param games visits the games
+	*@throws IOException if the snapshot can not be written
+	*/
+	void compact(Games games) throws IOException {
+		compacting.lock();
+		try {
+			snapshot(games);
+		}
+		finally {
+			compacting.unlock();
+		}
+	}
+
+	/**
+	*start a new segment and write the snapshot, with the compacting lock held.
+	*@param games visits the games
+	*@throws IOException if the snapshot can not be written
+	*/
+	private void snapshot(Games games) throws IOException {
+		long first;
+		long ids;
+		lock.lock();
+		try {
+			//records from now on go to a new segment, the snapshot covers the ones before
+			while (flushing) {
+				flushed.awaitUninterruptibly();
+			}
+			failed();
+			try {
+				write(segment, pending);
+				segment.force(false);
+			}
+			catch (IOException e) {
+				failure=e;
+				flushed.signalAll();
+				throw e;
+			}
+			pending.clear();
+			durable=appended;
+			flushed.signalAll();
+			segment.close();
+			first=segmentNumber+1;
+			openSegment(first);
+			ids=lastId; //the ids given after this are in the new segment
+		}
+		finally {
+			lock.unlock();
+		}
+
+		Path temp=dir.resolve("snapshot.tmp");
+		try (FileChannel channel=FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			CRC32C sum=new CRC32C();
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(
+				new CheckedOutputStream(Channels.newOutputStream(channel), sum), 1<<16));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(ids);
+			ByteBuffer[] buffer={ByteBuffer.allocate(1<<10)};
+			long[] count=new long[1];
+			games.forEach((id, version, game) -> {
+				out.writeLong(id);
+				out.writeLong(version);
+				buffer[0]=writeGame(out, game, buffer[0]);
+				count[0]++;
+			});
+			out.writeLong(-1L); //no more games
+			out.writeLong(count[0]);
+			out.flush();
+			out.writeInt((int) sum.getValue());
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, file("snapshot-", first, ".snap"), StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory();
+		for (long n : numbers("snapshot-", ".snap")) {
+			if (n<first) {
+				Files.delete(file("snapshot-", n, ".snap"));
+			}
+		}
+		for (long n : numbers("journal-", ".log")) {
+			if (n<first) {
+				Files.delete(file("journal-", n, ".log"));
+			}
+		}
+	}
+
+	/**
+	*make every record durable and close the segment.
+	*@throws IOException if the journal can not be written
+	*/
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			while (flushing) {
+				flushed.awaitUninterruptibly();
+			}
+			if (segment!=null && failure!=null) {
+				segment.close();
+				segment=null;
+				failed();
+			}
+			if (segment!=null) {
+				write(segment, pending);
+				pending.clear();
+				segment.force(false);
+				durable=appended;
+				segment.close();
+				segment=null;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*throw if a write of the journal failed, with the lock held.
+	*@throws IOException if it failed
+	*/
+	private void failed() throws IOException {
+		if (failure!=null) {
+			throw new IOException("The journal stopped after a failed write", failure);
+		}
+	}
+
+	/**
+	*write a game as its length and its PositionCodec bytes.
+	*@param out the snapshot
+	*@param game the game
+	*@param buffer a scratch buffer
+	*@return the scratch buffer, a bigger one if it was too small
+	*@throws IOException if the snapshot can not be written
+	*/
+	private static ByteBuffer writeGame(DataOutputStream out, PowerConnectFour game, ByteBuffer buffer) throws IOException {
+		while (true) {
+			buffer.clear();
+			try {
+				PositionCodec.encode(game, buffer);
+				break;
+			}
+			catch (java.nio.BufferOverflowException e) {
+				buffer=ByteBuffer.allocate(buffer.capacity()*2); //a tall game
+			}
+		}
+		out.writeInt(buffer.position());
+		out.write(buffer.array(), 0, buffer.position());
+		return buffer;
+	}
+
+	/**
+	*read a game written by writeGame.
+	*@param in the snapshot
+	*@param game where it goes
+	*@param buffer a scratch buffer
+	*@return the scratch buffer, a bigger one if it was too small
+	*@throws IOException if the snapshot is damaged
+	*/
+	private static ByteBuffer readGame(DataInputStream in, PowerConnectFour game, ByteBuffer buffer) throws IOException {
+		int length=in.readInt();
+		if (length<PositionCodec.FIXED_BYTES) {
+			throw new IOException("Damaged game of " + length + " bytes");
+		}
+		if (buffer.capacity()<length) {
+			buffer=ByteBuffer.allocate(Math.max(length, buffer.capacity()*2));
+		}
+		in.readFully(buffer.array(), 0, length);
+		buffer.clear().limit(length);
+		try {
+			PositionCodec.decode(buffer, game);
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Damaged game", e);
+		}
+		return buffer;
+	}
+
+	/**
+	*read a snapshot.
+	*@param path the file
+	*@param replay gets the games
+	*@return the highest id the journal had seen when it was written
+	*@throws IOException if it is damaged
+	*/
+	private static long readSnapshot(Path path, Replay replay) throws IOException {
+		CRC32C sum=new CRC32C();
+		try (InputStream file=Files.newInputStream(path)) {
+			DataInputStream in=new DataInputStream(new CheckedInputStream(new BufferedInputStream(file, 1<<16), sum));
+			if (in.readInt()!=SNAPSHOT_MAGIC) {
+				throw new IOException("Not a snapshot: " + path);
+			}
+			long ids=in.readLong();
+			PowerConnectFour game=new PowerConnectFour();
+			ByteBuffer buffer=ByteBuffer.allocate(1<<10);
+			long count=0;
+			long id;
+			while ((id=in.readLong())!=-1L) {
+				long version=in.readLong();
+				buffer=readGame(in, game, buffer);
+				replay.restore(id, version, game);
+				count++;
+			}
+			long expected=in.readLong();
+			int checksum=(int) sum.getValue();
+			if (expected!=count || in.readInt()!=checksum) {
+				throw new IOException("Damaged snapshot: " + path);
+			}
+			return ids;
+		}
+		catch (EOFException e) {
+			throw new IOException("Damaged snapshot: " + path, e);
+		}
+	}
+
+	/**
+	*read the records of a segment.
+	*@param path the file
+	*@param replay gets the records
+	*@param last true for the newest segment, its torn end is cut off
+	*@throws IOException if a segment that is not the last is damaged
+	*/
+	private void readSegment(Path path, Replay replay, boolean last) throws IOException {
+		long good=0;
+		try (FileChannel channel=FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer=ByteBuffer.allocate(RECORD_BYTES*4096);
+			CRC32C check=new CRC32C();
+			boolean torn=false;
+			while (!torn) {
+				int read=channel.read(buffer);
+				buffer.flip();
+				while (buffer.remaining()>=RECORD_BYTES) {
+					int start=buffer.position();
+					check.reset();
+					check.update(buffer.array(), start, RECORD_BYTES-4);
+					long id=buffer.getLong();
+					long version=buffer.getLong();
+					int move=buffer.getInt();
+					if (buffer.getInt()!=(int) check.getValue()) {
+						torn=true;
+						break;
+					}
+					replay.record(id, version, move);
+					lastId=Math.max(lastId, id);
+					good+=RECORD_BYTES;
+				}
+				if (read<0) {
+					break; //what is left is half a record, cut off below
+				}
+				buffer.compact();
+			}
+			if (good<channel.size()) {
+				if (!last) {
+					throw new IOException("Damaged journal segment: " + path);
+				}
+				channel.truncate(good);
+				channel.force(true);
+			}
+		}
+	}
+
+	/**
+	*open a new segment, with the lock held.
+	*@param number its number
+	*@throws IOException if it can not be created
+	*/
+	private void openSegment(long number) throws IOException {
+		segment=FileChannel.open(file("journal-", number, ".log"), StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segmentNumber=number;
+		forceDirectory();
+	}
+
+	/**
+	*write a whole buffer.
+	*@param channel where to
+	*@param buffer the bytes from 0 to its position
+	*@throws IOException if it can not be written
+	*/
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	*make the new and renamed files of the directory durable, where the system allows it.
+	*/
+	private void forceDirectory() {
+		try (FileChannel channel=FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			//some systems can not open a directory, the files are forced already
+		}
+	}
+
+	/**
+	*get the path of a numbered file.
+	*@param prefix start of the name
+	*@param number the number
+	*@param suffix end of the name
+	*@return the path
+	*/
+	private Path file(String prefix, long number, String suffix) {
+		return dir.resolve(String.format("%s%016d%s", prefix, number, suffix));
+	}
+
+	/**
+	*get the numbers of the files with a prefix and suffix, smallest first.
+	*@param prefix start of the name
+	*@param suffix end of the name
+	*@return the numbers
+	*@throws IOException if the directory can not be read
+	*/
+	private List<Long> numbers(String prefix, String suffix) throws IOException {
+		List<Long> numbers=new ArrayList<>();
+		try (DirectoryStream<Path> files=Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+			for (Path path : files) {
+				String name=path.getFileName().toString();
+				try {
+					numbers.add(Long.parseLong(name.substring(prefix.length(), name.length()-suffix.length())));
+				}
+				catch (NumberFormatException e) {
+					//not a file of the journal
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*@throws Exception if a file can not be used
+	*/
+	public static void main(String[] args) throws Exception {
+		Path dir=Files.createTempDirectory("journal");
+		try {
+			//games come back after the registry is opened again
+			GameSessions sessions=GameSessions.open(dir);
+			long a=sessions.create();
+			long b=sessions.create();
+			sessions.play(a, Move.of(Move.DROP, 3, 0));
+			sessions.play(a, Move.of(Move.DROP, 4, 0));
+			sessions.play(b, Move.of(Move.POP, 0, 0)); //invalid, not journaled
+			sessions.play(b, Move.of(Move.DROP, 0, 0));
+			long c=sessions.create();
+			sessions.remove(c);
+			long hashA=sessions.snapshot(a).positionHash();
+			long hashB=sessions.snapshot(b).positionHash();
+			sessions.close();
+			sessions=GameSessions.open(dir);
+			if (sessions.size()==2 && sessions.snapshot(a).positionHash()==hashA
+				&& sessions.snapshot(b).positionHash()==hashB && sessions.snapshot(a).version()==2
+				&& sessions.create()==c+1) {
+				System.out.println("Yay 1!");
+			}
+
+			//a snapshot and the moves after it
+			sessions.compact();
+			sessions.play(a, Move.of(Move.POWER_DROP, 3, 0));
+			sessions.play(b, Move.of(Move.DROP, 6, 0));
+			hashA=sessions.snapshot(a).positionHash();
+			hashB=sessions.snapshot(b).positionHash();
+			Token turn=sessions.snapshot(a).currentPlayer();
+			Token bottom=sessions.snapshot(a).get(3, 0);
+			sessions.close();
+			sessions=GameSessions.open(dir);
+			if (sessions.snapshot(a).positionHash()==hashA && sessions.snapshot(b).positionHash()==hashB
+				&& sessions.snapshot(a).currentPlayer()==turn && sessions.snapshot(a).get(3, 0)==bottom
+				&& Files.list(dir).filter(path -> path.toString().endsWith(".snap")).count()==1) {
+				System.out.println("Yay 2!");
+			}
+
+			//a record torn by a crash is cut off, the ones before it stay
+			sessions.play(b, Move.of(Move.DROP, 6, 0));
+			sessions.close();
+			List<Long> segments=new GameJournal(dir).numbers("journal-", ".log");
+			Path last=dir.resolve(String.format("journal-%016d.log", segments.get(segments.size()-1)));
+			try (FileChannel channel=FileChannel.open(last, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}), channel.size());
+			}
+			sessions=GameSessions.open(dir);
+			if (sessions.snapshot(b).height(6)==2 && Files.size(last)%RECORD_BYTES==0) {
+				System.out.println("Yay 3!");
+			}
+
+			//writers that sync at the same time share a force
+			long[] ids=new long[8];
+			for (int t=0; t<ids.length; t++) {
+				ids[t]=sessions.create();
+			}
+			long before=sessions.journal().syncs();
+			GameSessions shared=sessions;
+			List<Thread> threads=new ArrayList<>();
+			for (long id : ids) {
+				Thread thread=new Thread(() -> {
+					for (int k=0; k<6; k++) {
+						shared.play(id, Move.of(Move.DROP, k%2, 0));
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			long forces=sessions.journal().syncs()-before;
+			sessions.close();
+			sessions=GameSessions.open(dir);
+			boolean all=true;
+			for (long id : ids) {
+				all&=sessions.snapshot(id).height(0)==3 && sessions.snapshot(id).height(1)==3;
+			}
+			if (all && forces<ids.length*6) {
+				System.out.println("Yay 4!");
+			}
+
+			//compacts at the same time take turns, the games come back whole
+			long[] hashes=new long[ids.length];
+			List<Thread> compacts=new ArrayList<>();
+			java.util.concurrent.atomic.AtomicInteger errors=new java.util.concurrent.atomic.AtomicInteger();
+			GameSessions busy=sessions;
+			for (int t=0; t<4; t++) {
+				Thread thread=new Thread(() -> {
+					try {
+						busy.compact();
+					}
+					catch (IOException e) {
+						errors.incrementAndGet();
+					}
+				});
+				thread.start();
+				compacts.add(thread);
+			}
+			for (Thread thread : compacts) {
+				thread.join();
+			}
+			for (int t=0; t<ids.length; t++) {
+				hashes[t]=sessions.snapshot(ids[t]).positionHash();
+			}
+			sessions.close();
+			sessions=GameSessions.open(dir);
+			boolean same=errors.get()==0;
+			for (int t=0; t<ids.length; t++) {
+				same&=sessions.snapshot(ids[t]).positionHash()==hashes[t];
+			}
+			if (same && Files.list(dir).filter(path -> path.toString().endsWith(".tmp")).count()==0) {
+				System.out.println("Yay 5!");
+			}
+
+			//the id of the newest game is not given again after it was removed and compacted away
+			long removed=sessions.create();
+			sessions.remove(removed);
+			sessions.compact();
+			sessions.close();
+			sessions=GameSessions.open(dir);
+			int live=sessions.size();
+			long fresh=sessions.create();
+			if (fresh>removed && sessions.size()==live+1) {
+				System.out.println("Yay 6!");
+			}
+
+			//after a failed write nothing more is called durable and the journal stops
+			GameJournal journal=sessions.journal();
+			long kept=sessions.create();
+			journal.segment.close(); //the next write fails
+			int thrown=0;
+			for (int k=0; k<3; k++) {
+				try {
+					sessions.play(kept, Move.of(Move.DROP, 0, 0));
+				}
+				catch (java.io.UncheckedIOException e) {
+					thrown++;
+				}
+			}
+			try {
+				sessions.compact();
+			}
+			catch (IOException e) {
+				thrown++;
+			}
+			boolean stopped=journal.durable<journal.appended && thrown==4;
+			try {
+				sessions.close();
+			}
+			catch (IOException e) {
+				thrown++;
+			}
+			sessions=GameSessions.open(dir);
+			if (stopped && thrown==5 && sessions.snapshot(kept).height(0)==0) {
+				System.out.println("Yay 7!");
+			}
+			sessions.close();
+		}
+		finally {
+			try (java.util.stream.Stream<Path> files=Files.list(dir)) {
+				for (Path path : (Iterable<Path>) files::iterator) {
+					Files.delete(path);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+}
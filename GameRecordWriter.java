@@ -0,0 +1,330 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.zip.CRC32C;
+
+/** writes games into a binary game record archive, read back by GameArchive.
+ * the archive is a header, the games one after the other, an index with the
+ * place, length and checksum of every game, and a footer pointing at the index.
+ * every move takes one byte, the kind in the top 2 bits and the column in the
+ * other 6, and power moves one more byte for the row:
+ * <pre>
+ *   header  magic "PC4R", version, columns, minimum rows       4 ints
+ *   games   move bytes
+ *   index   offset (long), length (int), crc32c (int)           per game
+ *   footer  index offset (long), games (long), index crc32c, magic "PC4E"
+ * </pre>
+ * text files may hold anything, so a column of ESCAPE is followed by the column
+ * as a zigzag varint, and so is a row byte of 255. a column of SPECIAL on a drop
+ * is Q and on a pop any word the game does not know.
+ * the main method converts text move files, as read by PowerConnectFourGUI.
+ * @author Fatemah Bahzad
+ */
+
+public class GameRecordWriter implements AutoCloseable {
+
+	/**
+	 * first and last int of an archive.
+	 */
+	public static final int MAGIC = 0x50433452;
+	public static final int END_MAGIC = 0x50433445;
+	/**
+	 * version of the format.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * bytes of the header, an index entry and the footer.
+	 */
+	public static final int HEADER_BYTES = 16;
+	public static final int ENTRY_BYTES = 16;
+	public static final int FOOTER_BYTES = 24;
+
+	/**
+	 * size of the game the moves are for, written in the header.
+	 */
+	public static final int COLUMNS = 7;
+	public static final int MIN_ROWS = 6;
+
+	/**
+	 * move kinds in the top 2 bits, the same numbers as Move.
+	 */
+	public static final int KIND_SHIFT = 6;
+	/**
+	 * columns below this fit in the move byte.
+	 */
+	public static final int ESCAPE = 62;
+	/**
+	 * Q as a drop column, an unknown word as a pop column.
+	 */
+	public static final int SPECIAL = 63;
+	/**
+	 * rows below this fit in the row byte.
+	 */
+	public static final int ROW_ESCAPE = 255;
+
+	private final DataOutputStream out;
+	/**
+	 * bytes written so far.
+	 */
+	private long offset;
+	/**
+	 * moves of the game being written.
+	 */
+	private byte[] game=new byte[256];
+	private int length;
+	private final CRC32C crc=new CRC32C();
+	/**
+	 * index entries of the games written, flushed by close.
+	 */
+	private long[] offsets=new long[1024];
+	private int[] lengths=new int[1024];
+	private int[] checksums=new int[1024];
+	private int games;
+
+	/**
+	*create a new archive, replacing the file if there is one.
+	*@param path file of the archive
+	*@throws IOException if the file can not be written
+	*/
+	public GameRecordWriter(Path path) throws IOException {
+		out=new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1<<16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(COLUMNS);
+		out.writeInt(MIN_ROWS);
+		offset=HEADER_BYTES;
+	}
+
+	/**
+	*add a drop to the current game.
+	*@param col the column as written, valid or not
+	*/
+	public void drop(int col) {
+		column(Move.DROP, col);
+	}
+
+	/**
+	*add a pop to the current game.
+	*@param col the column as written, valid or not
+	*/
+	public void pop(int col) {
+		column(Move.POP, col);
+	}
+
+	/**
+	*add a power drop to the current game.
+	*@param col the column as written, valid or not
+	*@param row the row as written, valid or not
+	*/
+	public void powerDrop(int col, int row) {
+		column(Move.POWER_DROP, col);
+		row(row);
+	}
+
+	/**
+	*add a power pop to the current game.
+	*@param col the column as written, valid or not
+	*@param row the row as written, valid or not
+	*/
+	public void powerPop(int col, int row) {
+		column(Move.POWER_POP, col);
+		row(row);
+	}
+
+	/**
+	*add a Q, the game ends there.
+	*/
+	public void quit() {
+		put(Move.DROP<<KIND_SHIFT | SPECIAL);
+	}
+
+	/**
+	*add a word that is no move, it is an invalid move when replayed.
+	*/
+	public void unknown() {
+		put(Move.POP<<KIND_SHIFT | SPECIAL);
+	}
+
+	/**
+	*finish the current game and write it, the next move starts a new game.
+	*@throws IOException if the archive can not be written
+	*/
+	public void endGame() throws IOException {
+		if (games==offsets.length) {
+			offsets=java.util.Arrays.copyOf(offsets, games*2);
+			lengths=java.util.Arrays.copyOf(lengths, games*2);
+			checksums=java.util.Arrays.copyOf(checksums, games*2);
+		}
+		crc.reset();
+		crc.update(game, 0, length);
+		offsets[games]=offset;
+		lengths[games]=length;
+		checksums[games]=(int) crc.getValue();
+		games++;
+		out.write(game, 0, length);
+		offset+=length;
+		length=0;
+	}
+
+	/**
+	*read a text game the way PowerConnectFourGUI does and write it as one game.
+	*reading stops after Q, like the game.
+	*@param scanner the text, one move per line such as "D 5" or "PP 3 0"
+	*@return number of moves written
+	*@throws IOException if the archive can not be written
+	*@throws InputMismatchException if a column or row is not a number, the game would stop there too
+	*/
+	public int convert(Scanner scanner) throws IOException {
+		int moves=0;
+		length=0;
+		while (scanner.hasNext()) {
+			String next=scanner.next();
+			moves++;
+			switch (next) {
+				case "D":
+					drop(scanner.nextInt());
+					scanner.nextLine();
+					break;
+				case "P":
+					pop(scanner.nextInt());
+					scanner.nextLine();
+					break;
+				case "PD":
+					powerDrop(scanner.nextInt(), scanner.nextInt());
+					scanner.nextLine();
+					break;
+				case "PP":
+					powerPop(scanner.nextInt(), scanner.nextInt());
+					scanner.nextLine();
+					break;
+				case "Q":
+					quit();
+					endGame();
+					return moves;
+				default:
+					unknown();
+			}
+		}
+		endGame();
+		return moves;
+	}
+
+	/**
+	*get the number of games written.
+	*@return games
+	*/
+	public long games() {
+		return games;
+	}
+
+	/**
+	*write the index and the footer and close the file.
+	*@throws IOException if the archive can not be written
+	*/
+	@Override
+	public void close() throws IOException {
+		long indexOffset=offset;
+		crc.reset();
+		byte[] entry=new byte[ENTRY_BYTES];
+		java.nio.ByteBuffer view=java.nio.ByteBuffer.wrap(entry);
+		for (int i=0; i<games; i++) {
+			view.putLong(0, offsets[i]).putInt(8, lengths[i]).putInt(12, checksums[i]);
+			crc.update(entry, 0, ENTRY_BYTES);
+			out.write(entry);
+		}
+		out.writeLong(indexOffset);
+		out.writeLong(games);
+		out.writeInt((int) crc.getValue());
+		out.writeInt(END_MAGIC);
+		out.close();
+	}
+
+	/**
+	*add the move byte.
+	*@param kind kind of the move
+	*@param col the column as written
+	*/
+	private void column(int kind, int col) {
+		if (col>=0 && col<ESCAPE) {
+			put(kind<<KIND_SHIFT | col);
+		}
+		else {
+			put(kind<<KIND_SHIFT | ESCAPE);
+			varint(col);
+		}
+	}
+
+	/**
+	*add the row byte.
+	*@param row the row as written
+	*/
+	private void row(int row) {
+		if (row>=0 && row<ROW_ESCAPE) {
+			put(row);
+		}
+		else {
+			put(ROW_ESCAPE);
+			varint(row);
+		}
+	}
+
+	/**
+	*add a number as a zigzag varint, 7 bits per byte, small numbers first.
+	*@param value the number
+	*/
+	private void varint(int value) {
+		int zigzag=(value<<1)^(value>>31);
+		while ((zigzag & ~0x7F)!=0) {
+			put((zigzag & 0x7F) | 0x80);
+			zigzag>>>=7;
+		}
+		put(zigzag);
+	}
+
+	/**
+	*add a byte to the current game.
+	*@param b the byte
+	*/
+	private void put(int b) {
+		if (length==game.length) {
+			game=java.util.Arrays.copyOf(game, length*2);
+		}
+		game[length++]=(byte) b;
+	}
+
+	/**
+	*convert text move files into one archive.
+	*@param args the archive to write, then the text files, one game each
+	*/
+	public static void main(String[] args) {
+		if (args.length<2) {
+			System.out.println("Usage: java GameRecordWriter Archive_File_Name Input_File_Name...");
+			System.exit(0);
+		}
+		int failed=0;
+		try (GameRecordWriter writer=new GameRecordWriter(Paths.get(args[0]))) {
+			for (int i=1; i<args.length; i++) {
+				try (Scanner scanner=new Scanner(new File(args[i]))) {
+					writer.convert(scanner);
+				}
+				catch (NoSuchElementException e) {
+					//the game would stop there with an error, so the file is left out
+					System.out.println("Skipped " + args[i] + ": " + e);
+					failed++;
+				}
+			}
+			System.out.println("Wrote " + writer.games() + " games, skipped " + failed);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
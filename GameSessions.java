@@ -0,0 +1,570 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/** owns many games and lets many threads play and watch them at once.
+ * changes to a game are made one at a time under a lock picked from a fixed
+ * set of stripes by the id of the game, so games on different stripes never wait
+ * for each other and the number of locks does not grow with the games.
+ * after every change the writer publishes an immutable Snapshot of the game,
+ * readers only read that volatile reference, so they never take a lock, never
+ * see half a move and never slow the writer down.
+ * a registry made with open keeps a GameJournal: every game created or removed
+ * and every valid move is written to it before the call returns, and open
+ * builds the games again from it after a crash.
+ * @author Fatemah Bahzad
+ */
+
+public class GameSessions {
+
+	/**
+	 * default number of lock stripes.
+	 */
+	private static final int DEFAULT_STRIPES = 64;
+
+	/**
+	 * tokens by side index.
+	 */
+	private static final Token[] TOKENS = Token.values();
+
+	private final ConcurrentHashMap<Long, Session> sessions=new ConcurrentHashMap<>();
+	private final ReentrantLock[] stripes;
+	private final AtomicLong ids=new AtomicLong();
+	/**
+	 * where the changes are written, or null for games that only live in memory.
+	 */
+	private final GameJournal journal;
+
+	/** a game of the registry and its last published snapshot.
+	 */
+	private static final class Session {
+		private final PowerConnectFour game=new PowerConnectFour();
+		private volatile Snapshot snapshot;
+		private long version;
+	}
+
+	/** the state of a game after a change, it never changes itself.
+	 */
+	public static final class Snapshot {
+
+		private final BitBoard board;
+		private final Token player;
+		private final int rows;
+		private final long version;
+		private final long hash;
+		private final boolean redConnected;
+		private final boolean yellowConnected;
+
+		/**
+		*copy the state of a game.
+		*@param game the game, not changed while it is copied
+		*@param version number of changes made to the game
+		*/
+		private Snapshot(PowerConnectFour game, long version) {
+			board=new BitBoard(game.sizeCol());
+			game.copyGrid(board);
+			player=game.currentPlayer();
+			rows=game.sizeRow();
+			this.version=version;
+			hash=game.positionHash();
+			redConnected=game.hasFourConnected(Token.RED);
+			yellowConnected=game.hasFourConnected(Token.YELLOW);
+		}
+
+		/**
+		*get the token at a cell.
+		*@param col index of the column
+		*@param row index of the row
+		*@return the token or null if the cell is empty
+		*/
+		public Token get(int col, int row) {
+			if (col<0 || col>=board.cols() || row<0) {
+				throw new IndexOutOfBoundsException("Col "+col+", row "+row+" out of bounds");
+			}
+			int side=board.get(col, row);
+			return (side==BitBoard.EMPTY) ? null : TOKENS[side];
+		}
+
+		/**
+		*get the number of tokens in a column.
+		*@param col index of the column
+		*@return height of the column
+		*/
+		public int height(int col) {
+			return board.height(col);
+		}
+
+		/**
+		*get the number of tokens in the tallest column.
+		*@return height of the tallest column
+		*/
+		public int maxHeight() {
+			return board.tallest();
+		}
+
+		/**
+		*get the number of columns.
+		*@return columns
+		*/
+		public int sizeCol() {
+			return board.cols();
+		}
+
+		/**
+		*get the number of rows the game shows.
+		*@return rows
+		*/
+		public int sizeRow() {
+			return rows;
+		}
+
+		/**
+		*get the player to move.
+		*@return the token of the current player
+		*/
+		public Token currentPlayer() {
+			return player;
+		}
+
+		/**
+		*check whether a player has four connected.
+		*@param player the token to check
+		*@return true if the player connected four
+		*/
+		public boolean hasFourConnected(Token player) {
+			return (player==Token.RED) ? redConnected : yellowConnected;
+		}
+
+		/**
+		*get the number of changes made to the game before this snapshot.
+		*@return version, higher for later snapshots
+		*/
+		public long version() {
+			return version;
+		}
+
+		/**
+		*get the zobrist hash of the position, as PowerConnectFour.positionHash.
+		*@return 64 bit hash
+		*/
+		public long positionHash() {
+			return hash;
+		}
+
+		/**
+		*copy the tokens into a bitboard owned by the caller, for analysis.
+		*@param target a board with sizeCol() columns
+		*/
+		public void copyGrid(BitBoard target) {
+			target.copyFrom(board);
+		}
+	}
+
+	/**
+	*create a registry with the default number of stripes.
+	*/
+	public GameSessions() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	*create a registry.
+	*@param stripes number of locks, rounded up to a power of two
+	*/
+	public GameSessions(int stripes) {
+		this(stripes, null);
+	}
+
+	/**
+	*create a registry.
+	*@param stripes number of locks, rounded up to a power of two
+	*@param journal where the changes are written, or null
+	*/
+	private GameSessions(int stripes, GameJournal journal) {
+		this.journal=journal;
+		if (stripes<1) {
+			throw new IllegalArgumentException("Stripes must be positive");
+		}
+		int n=1;
+		while (n<stripes) {
+			n<<=1;
+		}
+		this.stripes=new ReentrantLock[n];
+		for (int i=0; i<this.stripes.length; i++) {
+			this.stripes[i]=new ReentrantLock();
+		}
+	}
+
+	/**
+	*open a registry whose games survive a crash, with the games journaled in the directory.
+	*@param dir the directory of the journal, created if needed
+	*@return the registry, close it to close the journal
+	*@throws IOException if the journal can not be read or written
+	*/
+	public static GameSessions open(Path dir) throws IOException {
+		GameJournal journal=new GameJournal(dir);
+		GameSessions registry=new GameSessions(DEFAULT_STRIPES, journal);
+		BitBoard board=new BitBoard(7);
+		journal.replay(new GameJournal.Replay() {
+			@Override
+			public void restore(long id, long version, PowerConnectFour game) {
+				Session session=new Session();
+				game.copyGrid(board);
+				session.game.restore(board, game.turn(), game.sizeRow());
+				session.version=version;
+				registry.sessions.put(id, session);
+			}
+
+			@Override
+			public void record(long id, long version, int move) {
+				if (move==GameJournal.CREATE) {
+					registry.sessions.putIfAbsent(id, new Session());
+				}
+				else if (move==GameJournal.REMOVE) {
+					registry.sessions.remove(id);
+				}
+				else {
+					Session session=registry.sessions.get(id);
+					if (session!=null && version>session.version) { //older moves are in the snapshot
+						Move.apply(session.game, move);
+						session.version=version;
+					}
+				}
+			}
+		});
+		for (Session session : registry.sessions.values()) {
+			session.snapshot=new Snapshot(session.game, session.version);
+		}
+		registry.ids.set(journal.lastId()); //with the removed games, an id is never given twice
+		return registry;
+	}
+
+	/**
+	*start a new game.
+	*@return the id of the game
+	*/
+	public long create() {
+		long id=ids.incrementAndGet();
+		Session session=new Session();
+		session.snapshot=new Snapshot(session.game, 0);
+		ReentrantLock lock=stripe(id);
+		long record=0;
+		lock.lock();
+		try {
+			//journaled before it is published, so no move of the game can come before its CREATE
+			if (journal!=null) {
+				record=append(id, 0, GameJournal.CREATE);
+			}
+			sessions.put(id, session);
+		}
+		finally {
+			lock.unlock();
+		}
+		durable(record);
+		return id;
+	}
+
+	/**
+	*end a game, a writer that is using it finishes its change first.
+	*@param id the id of the game
+	*@return true if there was such a game
+	*/
+	public boolean remove(long id) {
+		ReentrantLock lock=stripe(id);
+		long record=0;
+		lock.lock();
+		try {
+			if (sessions.remove(id)==null) {
+				return false;
+			}
+			if (journal!=null) {
+				record=append(id, 0, GameJournal.REMOVE);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		durable(record);
+		return true;
+	}
+
+	/**
+	*get the number of games.
+	*@return games in the registry
+	*/
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	*make a move in a game.
+	*@param id the id of the game
+	*@param move the move packed as in Move
+	*@return true if it was a valid move
+	*@throws IllegalArgumentException if there is no such game
+	*/
+	public boolean play(long id, int move) {
+		ReentrantLock lock=stripe(id);
+		long record=0;
+		boolean valid;
+		lock.lock();
+		try {
+			Session session=session(id);
+			try {
+				valid=Move.apply(session.game, move);
+			}
+			finally {
+				publish(session);
+			}
+			if (valid && journal!=null) {
+				record=append(id, session.version, move);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		durable(record); //outside the lock, so other games join the same group commit
+		return valid;
+	}
+
+	/**
+	*change a game, no other writer of the game runs at the same time.
+	*a new snapshot is published after the action, even if it throws.
+	*@param <T> what the action returns
+	*@param id the id of the game
+	*@param action the change, it must not keep the game
+	*@return what the action returned
+	*@throws IllegalArgumentException if there is no such game
+	*@throws IllegalStateException if the registry has a journal, it can only journal play
+	*/
+	public <T> T write(long id, Function<PowerConnectFour, T> action) {
+		if (journal!=null) {
+			throw new IllegalStateException("Games with a journal can only be changed with play");
+		}
+		ReentrantLock lock=stripe(id);
+		lock.lock();
+		try {
+			Session session=session(id);
+			try {
+				return action.apply(session.game);
+			}
+			finally {
+				publish(session);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	*get the last snapshot of a game, without waiting for a writer.
+	*@param id the id of the game
+	*@return the snapshot
+	*@throws IllegalArgumentException if there is no such game
+	*/
+	public Snapshot snapshot(long id) {
+		return session(id).snapshot;
+	}
+
+	/**
+	*write every game into a snapshot of the journal, so it does not have to be replayed.
+	*games can be played while this runs, each one waits only while it is saved.
+	*@throws IOException if the snapshot can not be written
+	*@throws IllegalStateException if the registry has no journal
+	*/
+	public void compact() throws IOException {
+		if (journal==null) {
+			throw new IllegalStateException("The games have no journal");
+		}
+		journal.compact(saver -> {
+			for (java.util.Map.Entry<Long, Session> entry : sessions.entrySet()) {
+				ReentrantLock lock=stripe(entry.getKey());
+				lock.lock();
+				try {
+					if (sessions.containsKey(entry.getKey())) {
+						Session session=entry.getValue();
+						saver.save(entry.getKey(), session.version, session.game);
+					}
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	*close the journal, every change made so far is on disk after this.
+	*@throws IOException if the journal can not be written
+	*/
+	public void close() throws IOException {
+		if (journal!=null) {
+			journal.close();
+		}
+	}
+
+	/**
+	*get the journal.
+	*@return the journal or null
+	*/
+	GameJournal journal() {
+		return journal;
+	}
+
+	/**
+	*count a change of a game and publish its new snapshot, with its lock held.
+	*@param session the game
+	*/
+	private void publish(Session session) {
+		session.version++;
+		session.snapshot=new Snapshot(session.game, session.version);
+	}
+
+	/**
+	*add a record to the journal.
+	*@param id the id of the game
+	*@param version the version of the game after the record
+	*@param move the move, CREATE or REMOVE
+	*@return the number of the record
+	*/
+	private long append(long id, long version, int move) {
+		try {
+			return journal.append(id, version, move);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not write the journal", e);
+		}
+	}
+
+	/**
+	*wait until a record of the journal is on disk.
+	*@param record the number of the record, 0 for none
+	*/
+	private void durable(long record) {
+		if (record>0) {
+			try {
+				journal.sync(record);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not write the journal", e);
+			}
+		}
+	}
+
+	/**
+	*find a game.
+	*@param id the id of the game
+	*@return the session
+	*@throws IllegalArgumentException if there is no such game
+	*/
+	private Session session(long id) {
+		Session session=sessions.get(id);
+		if (session==null) {
+			throw new IllegalArgumentException("No game " + id);
+		}
+		return session;
+	}
+
+	/**
+	*get the lock of a game.
+	*@param id the id of the game
+	*@return its stripe
+	*/
+	private ReentrantLock stripe(long id) {
+		return stripes[(int) BitBoard.mix(id) & (stripes.length-1)];
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*@throws InterruptedException if the test is interrupted
+	*/
+	public static void main(String[] args) throws InterruptedException {
+		GameSessions registry=new GameSessions(8);
+		long id=registry.create();
+		Snapshot before=registry.snapshot(id);
+		boolean drop=registry.play(id, Move.of(Move.DROP, 3, 0));
+		boolean pop=registry.play(id, Move.of(Move.POP, 3, 0)); //yellow can not pop red
+		Snapshot after=registry.snapshot(id);
+		if (drop && !pop && before.get(3, 0)==null && after.get(3, 0)==Token.RED
+			&& after.currentPlayer()==Token.YELLOW && after.version()==2 && before.version()==0) {
+			System.out.println("Yay 1!");
+		}
+
+		//writers and readers on the same games at once, every snapshot is a whole position
+		int games=16;
+		long[] ids=new long[games];
+		for (int g=0; g<games; g++) {
+			ids[g]=registry.create();
+		}
+		AtomicInteger moves=new AtomicInteger();
+		AtomicInteger broken=new AtomicInteger();
+		AtomicInteger reads=new AtomicInteger();
+		List<Thread> threads=new ArrayList<>();
+		for (int w=0; w<4; w++) {
+			threads.add(new Thread(() -> {
+				ThreadLocalRandom random=ThreadLocalRandom.current();
+				int[] buffer=new int[256];
+				for (int i=0; i<20000; i++) {
+					long game=ids[random.nextInt(games)];
+					registry.write(game, g -> {
+						if (g.hasFourConnected(Token.RED) || g.hasFourConnected(Token.YELLOW)) {
+							g.reset();
+							return false;
+						}
+						int n=Math.min(g.legalMoves(buffer), buffer.length);
+						moves.incrementAndGet();
+						return Move.apply(g, buffer[random.nextInt(n)]);
+					});
+				}
+			}));
+		}
+		for (int r=0; r<4; r++) {
+			threads.add(new Thread(() -> {
+				ThreadLocalRandom random=ThreadLocalRandom.current();
+				long[] seen=new long[games];
+				BitBoard board=new BitBoard(7);
+				for (int i=0; i<20000; i++) {
+					int g=random.nextInt(games);
+					Snapshot snapshot=registry.snapshot(ids[g]);
+					snapshot.copyGrid(board);
+					if (snapshot.version()<seen[g] || board.hash()!=board.computeHash()
+						|| board.hash(snapshot.currentPlayer().ordinal())!=snapshot.positionHash()) {
+						broken.incrementAndGet();
+					}
+					seen[g]=snapshot.version();
+					reads.incrementAndGet();
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		long versions=0;
+		for (long game : ids) {
+			versions+=registry.snapshot(game).version();
+		}
+		if (broken.get()==0 && reads.get()==80000 && versions==80000 && moves.get()>0) {
+			System.out.println("Yay 2!");
+		}
+
+		if (registry.remove(id) && !registry.remove(id) && registry.size()==games) {
+			System.out.println("Yay 3!");
+		}
+	}
+}
@@ -0,0 +1,332 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/** draws the grid of a game into a buffer that is reused, and writes every frame at once.
+ * the plain mode draws the same text as PowerConnectFourGUI.displayGrid used to,
+ * one call to write instead of one format for every cell.
+ * the ANSI mode draws the whole grid the first time, and after that only moves
+ * the cursor to the cells that changed since the last frame and writes those,
+ * unless the grid got taller or shorter, then it is drawn again.
+ * a renderer keeps the tokens of the last frame as a bitboard, the changed cells are
+ * found by comparing the words under the tops of the columns, so a tall tower costs
+ * its own tokens and not a cell for every row of every column.
+ * a renderer keeps the last frame, so it is meant for one thread.
+ * @author Fatemah Bahzad
+ */
+
+public class GridRenderer {
+
+	/**
+	 * escape codes: clear the screen and go to the top left corner.
+	 */
+	private static final byte[] CLEAR = {27, '[', 'H', 27, '[', '2', 'J'};
+
+	/**
+	 * where the frames go, or null for System.out as it is when a frame is written.
+	 */
+	private final OutputStream out;
+	private final boolean ansi;
+	private final byte[] newline;
+	/**
+	 * the frame being built.
+	 */
+	private byte[] buffer=new byte[1024];
+	private int length;
+	/**
+	 * tokens by side index of the bitboard.
+	 */
+	private static final Token[] TOKENS = Token.values();
+	/**
+	 * tokens of the last frame and of the frame being built, and the size of the last frame.
+	 */
+	private BitBoard shown;
+	private BitBoard next;
+	private int lastRows=-1;
+	private int lastCols=-1;
+
+	/**
+	*create a renderer writing to System.out.
+	*@param ansi true to redraw only the cells that changed
+	*/
+	public GridRenderer(boolean ansi) {
+		this(null, ansi);
+	}
+
+	/**
+	*create a renderer writing to a stream.
+	*@param out where the frames go
+	*@param ansi true to redraw only the cells that changed
+	*/
+	public GridRenderer(OutputStream out, boolean ansi) {
+		this(out, ansi, System.lineSeparator());
+	}
+
+	/**
+	*create a renderer writing to a stream with its own end of line, for a protocol.
+	*@param out where the frames go
+	*@param ansi true to redraw only the cells that changed
+	*@param newline what ends every line
+	*/
+	public GridRenderer(OutputStream out, boolean ansi, String newline) {
+		this.out=out;
+		this.ansi=ansi;
+		this.newline=newline.getBytes();
+	}
+
+	/**
+	*draw a frame of the game and write it.
+	*@param game the game to draw
+	*/
+	public void render(PowerConnectFour game) {
+		length=0;
+		int rows=game.sizeRow();
+		int cols=game.sizeCol();
+		if (next==null || next.cols()!=cols) {
+			shown=new BitBoard(cols);
+			next=new BitBoard(cols);
+		}
+		game.copyGrid(next);
+		if (!ansi || rows!=lastRows || cols!=lastCols) {
+			if (ansi) {
+				put(CLEAR);
+			}
+			full(game, rows, cols);
+		}
+		else {
+			changes(game, rows, cols);
+		}
+		BitBoard last=shown; //the new frame is the one shown now
+		shown=next;
+		next=last;
+		write();
+	}
+
+	/**
+	*forget the last frame, the next ANSI frame draws the whole grid.
+	*/
+	public void reset() {
+		lastRows=-1;
+		lastCols=-1;
+	}
+
+	/**
+	*draw every cell, as displayGrid does.
+	*@param game the game
+	*@param rows rows shown
+	*@param cols columns
+	*/
+	private void full(PowerConnectFour game, int rows, int cols) {
+		put("|   |");
+		for (int j=0; j<cols; j++) {
+			put("| ");
+			putInt(j);
+			put(" |");
+		}
+		put(newline);
+		for (int i=rows-1; i>=0; i--) {
+			put("| ");
+			putInt(i);
+			put(" |");
+			for (int j=0; j<cols; j++) {
+				put("| ");
+				put(symbol(game, next.get(j, i)));
+				put(" |");
+			}
+			put(newline);
+		}
+		lastRows=rows;
+		lastCols=cols;
+	}
+
+	/**
+	*move the cursor to the cells that changed and draw them, then below the grid.
+	*only the rows under the top of a column in one of the two frames can change.
+	*@param game the game
+	*@param rows rows shown, the same as in the last frame
+	*@param cols columns, the same as in the last frame
+	*/
+	private void changes(PowerConnectFour game, int rows, int cols) {
+		for (int j=0; j<cols; j++) {
+			int top=Math.max(shown.height(j), next.height(j));
+			for (int w=0; (w<<6)<top; w++) {
+				//a cell changed when it holds another token, or a token came or went
+				long diff=(shown.word(BitBoard.RED, j, w) ^ next.word(BitBoard.RED, j, w))
+					| (shown.word(BitBoard.YELLOW, j, w) ^ next.word(BitBoard.YELLOW, j, w));
+				while (diff!=0) {
+					int i=(w<<6)+Long.numberOfTrailingZeros(diff);
+					//the column numbers are on line 1, the row label is "| 9 |"
+					cursor(rows-i+1, 4+digits(i)+5*j+3);
+					put(symbol(game, next.get(j, i)));
+					diff&=diff-1;
+				}
+			}
+		}
+		cursor(rows+2, 1);
+	}
+
+	/**
+	*get the symbol drawn for a cell.
+	*@param game the game
+	*@param side the side owning the cell, or BitBoard.EMPTY
+	*@return symbol of the token or the empty symbol
+	*/
+	private static char symbol(PowerConnectFour game, int side) {
+		return (side==BitBoard.EMPTY) ? game.getEmptySymbol() : TOKENS[side].getSymbol();
+	}
+
+	/**
+	*add the escape code moving the cursor.
+	*@param line line from 1 at the top
+	*@param column column from 1 at the left
+	*/
+	private void cursor(int line, int column) {
+		put((char) 27);
+		put('[');
+		putInt(line);
+		put(';');
+		putInt(column);
+		put('H');
+	}
+
+	/**
+	*write the frame, System.out is looked up now so it can be replaced.
+	*/
+	private void write() {
+		OutputStream target=(out==null) ? System.out : out;
+		try {
+			target.write(buffer, 0, length);
+			target.flush();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	*get the number of digits of a number that is not negative.
+	*@param value the number
+	*@return digits
+	*/
+	private static int digits(int value) {
+		int n=1;
+		while (value>=10) {
+			value/=10;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	*add a number that is not negative.
+	*@param value the number
+	*/
+	private void putInt(int value) {
+		int n=digits(value);
+		room(n);
+		for (int k=length+n-1; k>=length; k--) {
+			buffer[k]=(byte) ('0'+value%10);
+			value/=10;
+		}
+		length+=n;
+	}
+
+	/**
+	*add ASCII text.
+	*@param text the text
+	*/
+	private void put(String text) {
+		room(text.length());
+		for (int k=0; k<text.length(); k++) {
+			buffer[length++]=(byte) text.charAt(k);
+		}
+	}
+
+	/**
+	*add bytes.
+	*@param bytes the bytes
+	*/
+	private void put(byte[] bytes) {
+		room(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length+=bytes.length;
+	}
+
+	/**
+	*add an ASCII character.
+	*@param c the character
+	*/
+	private void put(char c) {
+		room(1);
+		buffer[length++]=(byte) c;
+	}
+
+	/**
+	*make room for more bytes.
+	*@param n bytes needed
+	*/
+	private void room(int n) {
+		if (length+n>buffer.length) {
+			buffer=java.util.Arrays.copyOf(buffer, Math.max(length+n, buffer.length*2));
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		PowerConnectFour game=new PowerConnectFour();
+		game.drop(3);
+		game.powerDrop(3, 0);
+		game.drop(5);
+
+		//the plain frame is the text of the old displayGrid
+		StringBuilder expected=new StringBuilder("|   |");
+		for (int j=0; j<game.sizeCol(); j++) {
+			expected.append(String.format("| %d |", j));
+		}
+		expected.append(System.lineSeparator());
+		for (int i=game.sizeRow()-1; i>=0; i--) {
+			expected.append(String.format("| %d |", i));
+			for (int j=0; j<game.sizeCol(); j++) {
+				Token cell=game.get(j, i);
+				expected.append(String.format("| %c |", (cell==null) ? game.getEmptySymbol() : cell.getSymbol()));
+			}
+			expected.append(System.lineSeparator());
+		}
+		ByteArrayOutputStream plain=new ByteArrayOutputStream();
+		new GridRenderer(plain, false).render(game);
+		if (plain.toString().equals(expected.toString())) {
+			System.out.println("Yay 1!");
+		}
+
+		//after the first frame only the changed cells are written
+		ByteArrayOutputStream frames=new ByteArrayOutputStream();
+		GridRenderer renderer=new GridRenderer(frames, true);
+		renderer.render(game);
+		int first=frames.size();
+		frames.reset();
+		game.drop(0);
+		renderer.render(game);
+		String change=frames.toString();
+		//row 0 is on line 7, the token of column 0 is 3 after its label "| 0 |"
+		if (first>200 && change.equals("\u001b[7;8HY\u001b[8;1H")) {
+			System.out.println("Yay 2!");
+		}
+
+		//a taller grid is drawn again
+		frames.reset();
+		for (int i=0; i<6; i++) {
+			game.drop(1);
+		}
+		renderer.render(game);
+		if (frames.toString().startsWith("\u001b[H\u001b[2J|   |") && frames.toString().contains("| 6 |")) {
+			System.out.println("Yay 3!");
+		}
+	}
+}
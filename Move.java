@@ -0,0 +1,137 @@
+/** helper methods for moves packed into an int.
+ * the low 2 bits hold the kind of the move, the next 12 bits the column
+ * and the rest the row, so moves can be kept in int arrays without boxing.
+ * @author Fatemah Bahzad
+ */
+
+public final class Move {
+
+	/**
+	 * drop a token on top of a column.
+	 */
+	public static final int DROP = 0;
+	/**
+	 * pop the bottom token of a column.
+	 */
+	public static final int POP = 1;
+	/**
+	 * insert a token at a row of a column.
+	 */
+	public static final int POWER_DROP = 2;
+	/**
+	 * remove the token at a row of a column.
+	 */
+	public static final int POWER_POP = 3;
+
+	/**
+	 * returned when there is no move.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * number of bits used for the column.
+	 */
+	private static final int COL_BITS = 12;
+
+	/**
+	 * most columns a board can have for its moves to be packed.
+	 */
+	public static final int MAX_COLS = 1<<COL_BITS;
+
+	/**
+	 * no instances, only static helpers.
+	 */
+	private Move() {
+	}
+
+	/**
+	 * pack a move into an int.
+	 * @param kind DROP, POP, POWER_DROP or POWER_POP
+	 * @param col index of the column
+	 * @param row index of the row, 0 for drop and pop
+	 * @return the packed move
+	 */
+	public static int of(int kind, int col, int row) {
+		return (row<<(COL_BITS+2)) | (col<<2) | kind;
+	}
+
+	/**
+	 * get the kind of a packed move.
+	 * @param move the packed move
+	 * @return DROP, POP, POWER_DROP or POWER_POP
+	 */
+	public static int kind(int move) {
+		return move&3;
+	}
+
+	/**
+	 * get the column of a packed move.
+	 * @param move the packed move
+	 * @return index of the column
+	 */
+	public static int col(int move) {
+		return (move>>>2)&((1<<COL_BITS)-1);
+	}
+
+	/**
+	 * get the row of a packed move.
+	 * @param move the packed move
+	 * @return index of the row
+	 */
+	public static int row(int move) {
+		return move>>>(COL_BITS+2);
+	}
+
+	/**
+	 * get the same move on the board mirrored left to right.
+	 * @param move the packed move, or NONE
+	 * @param cols number of columns of the board
+	 * @return the move with column cols-1-col, or NONE
+	 */
+	public static int mirror(int move, int cols) {
+		if (move==NONE) {
+			return NONE;
+		}
+		return of(kind(move), cols-1-col(move), row(move));
+	}
+
+	/**
+	 * make the move in the game for the current player.
+	 * @param game the game to change
+	 * @param move the packed move
+	 * @return true if it is a valid move, and false if it is not
+	 */
+	public static boolean apply(PowerConnectFour game, int move) {
+		switch (kind(move)) {
+			case DROP:
+				return game.drop(col(move));
+			case POP:
+				return game.pop(col(move));
+			case POWER_DROP:
+				return game.powerDrop(col(move), row(move));
+			default:
+				return game.powerPop(col(move), row(move));
+		}
+	}
+
+	/**
+	 * write the move the way PowerConnectFourGUI reads it, like "D 5" or "PP 3 0".
+	 * @param move the packed move
+	 * @return the move as text
+	 */
+	public static String toString(int move) {
+		if (move==NONE) {
+			return "none";
+		}
+		switch (kind(move)) {
+			case DROP:
+				return "D " + col(move);
+			case POP:
+				return "P " + col(move);
+			case POWER_DROP:
+				return "PD " + col(move) + " " + row(move);
+			default:
+				return "PP " + col(move) + " " + row(move);
+		}
+	}
+}
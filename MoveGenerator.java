@@ -0,0 +1,121 @@
+/** lists and checks the legal moves of a position without changing it.
+ * moves are written into int arrays owned by the caller, packed as in Move,
+ * so generating them allocates nothing.
+ * @author Fatemah Bahzad
+ */
+
+public final class MoveGenerator {
+
+	/**
+	 * no instances, only static helpers.
+	 */
+	private MoveGenerator() {
+	}
+
+	/**
+	 * get the most moves generate can list for the board, a safe buffer size.
+	 * @param board the position
+	 * @return upper bound of the number of moves
+	 */
+	public static int maxMoves(BitBoard board) {
+		int n=2*board.cols();
+		for (int i=0; i<board.cols(); i++) {
+			n+=2*board.height(i)+1; //every row for both power moves, plus on top
+		}
+		return n;
+	}
+
+	/**
+	 * list every legal move of the side.
+	 * when distinct is true a power drop on top of a column (same as a drop) and a
+	 * power pop at row 0 (same as a pop) are left out, so every move gives a
+	 * different position. moves that do not fit in the buffer are only counted.
+	 * @param board the position
+	 * @param side the player to move
+	 * @param buffer where the moves are written
+	 * @param distinct true to leave out the moves that repeat a drop or a pop
+	 * @return number of legal moves, more then buffer.length if it was too small
+	 */
+	public static int generate(BitBoard board, int side, int[] buffer, boolean distinct) {
+		int n=0;
+		int cols=board.cols();
+		for (int i=0; i<cols; i++) {
+			n=put(buffer, n, Move.of(Move.DROP, i, 0));
+			if (board.get(i, 0)==side) {
+				n=put(buffer, n, Move.of(Move.POP, i, 0));
+			}
+		}
+		for (int i=0; i<cols; i++) {
+			int h=board.height(i);
+			int top=distinct ? h : h+1; //a power drop at h is a drop
+			for (int r=0; r<top; r++) {
+				n=put(buffer, n, Move.of(Move.POWER_DROP, i, r));
+			}
+			//power pops are the set bits of the side's mask
+			for (int w=0; (w<<6)<h; w++) {
+				long own=board.word(side, i, w);
+				if (w==0 && distinct) {
+					own&=~1L; //a power pop at row 0 is a pop
+				}
+				while (own!=0) {
+					n=put(buffer, n, Move.of(Move.POWER_POP, i, (w<<6)+Long.numberOfTrailingZeros(own)));
+					own&=own-1;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * get the columns the side can pop, bit i is set when column i can be popped.
+	 * @param board the position, with at most 64 columns
+	 * @param side the player to move
+	 * @return mask of the columns
+	 */
+	public static long popMask(BitBoard board, int side) {
+		long mask=0L;
+		for (int i=0; i<board.cols() && i<64; i++) {
+			mask|=(board.word(side, i, 0) & 1L)<<i;
+		}
+		return mask;
+	}
+
+	/**
+	 * check whether the side can make the move, without making it.
+	 * @param board the position
+	 * @param side the player to move
+	 * @param move the move packed as in Move
+	 * @return true if it is a valid move, and false if it is not
+	 */
+	public static boolean isLegal(BitBoard board, int side, int move) {
+		int col=Move.col(move);
+		if (move==Move.NONE || col>=board.cols()) {
+			return false;
+		}
+		int row=Move.row(move);
+		switch (Move.kind(move)) {
+			case Move.DROP:
+				return true;
+			case Move.POP:
+				return board.get(col, 0)==side;
+			case Move.POWER_DROP:
+				return row<=board.height(col);
+			default:
+				return board.get(col, row)==side;
+		}
+	}
+
+	/**
+	 * write a move into the buffer if there is room.
+	 * @param buffer where the moves are written
+	 * @param n number of moves so far
+	 * @param move the move
+	 * @return the new number of moves
+	 */
+	private static int put(int[] buffer, int n, int move) {
+		if (n<buffer.length) {
+			buffer[n]=move;
+		}
+		return n+1;
+	}
+}
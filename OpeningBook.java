@@ -0,0 +1,394 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/** an opening book: the best move of every position of the first plies of a game.
+ * build searches every position reached from the empty board in up to the given
+ * number of plies, with every kind of move, and writes the answers to a file:
+ * <pre>
+ *   header   magic, version, plies, depth, number of entries (long),
+ *            index bits and a crc32c of the index and the entries, 32 bytes
+ *   index    2^bits+1 ints, the first entry whose key starts with those bits
+ *   entries  key (the symmetricHash of the position), move and score, 16 bytes,
+ *            sorted by key as an unsigned number
+ * </pre>
+ * a position and its mirror image share one entry, whose move is the move of
+ * the position that isMirrored is false for, so a book holds about half the positions.
+ * a book is memory mapped when it is opened, and probe finds a position by
+ * looking up the top bits of its hash in the index and scanning the one or two
+ * entries of that bucket, so an answer takes well under a microsecond once the
+ * pages are in memory. probe only reads the mapped bytes at fixed offsets, so
+ * one book can be shared by every thread.
+ * @author Fatemah Bahzad
+ */
+
+public class OpeningBook implements AutoCloseable {
+
+	/**
+	 * first int of a book, "PCOB".
+	 */
+	static final int MAGIC = 0x50434F42;
+	static final int VERSION = 2;
+
+	/**
+	 * bytes of the header and of an entry.
+	 */
+	private static final int HEADER_BYTES = 32;
+	private static final int ENTRY_BYTES = 16;
+	/**
+	 * most index bits, a bucket for about every entry up to 16M entries.
+	 */
+	private static final int MAX_INDEX_BITS = 24;
+	/**
+	 * returned by probe for a position not in the book, its move is Move.NONE.
+	 */
+	public static final long MISSING = -1L;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final int plies;
+	private final int depth;
+	private final int entries;
+	private final int indexBits;
+	private final int entryOffset;
+
+	/**
+	*open a book and map it.
+	*@param path file of the book
+	*@throws IOException if the file can not be read or is no book
+	*/
+	public OpeningBook(Path path) throws IOException {
+		channel=FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size=channel.size();
+			if (size<HEADER_BYTES || size>Integer.MAX_VALUE) {
+				throw new IOException("Not an opening book: " + path);
+			}
+			map=channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (map.getInt(0)!=MAGIC) {
+				throw new IOException("Not an opening book: " + path);
+			}
+			if (map.getInt(4)!=VERSION) {
+				throw new IOException("Unknown opening book version " + map.getInt(4));
+			}
+			plies=map.getInt(8);
+			depth=map.getInt(12);
+			long count=map.getLong(16);
+			indexBits=map.getInt(24);
+			if (indexBits<0 || indexBits>MAX_INDEX_BITS || count<0) {
+				throw new IOException("Damaged opening book: " + path);
+			}
+			entries=(int) count;
+			entryOffset=HEADER_BYTES+4*((1<<indexBits)+1);
+			if (entryOffset+(long) entries*ENTRY_BYTES!=size) {
+				throw new IOException("Damaged opening book: " + path);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	*get the number of plies the book was built for.
+	*@return plies from the empty board
+	*/
+	public int plies() {
+		return plies;
+	}
+
+	/**
+	*get the depth the positions were searched to.
+	*@return depth in plies
+	*/
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	*get the number of positions in the book.
+	*@return entries
+	*/
+	public int entries() {
+		return entries;
+	}
+
+	/**
+	*find a position.
+	*@param key the symmetricHash of the position
+	*@return the entry, read it with move and score, or MISSING
+	*/
+	public long probe(long key) {
+		int bucket=bucket(key, indexBits);
+		int end=map.getInt(HEADER_BYTES+4*(bucket+1));
+		for (int i=map.getInt(HEADER_BYTES+4*bucket); i<end; i++) {
+			int offset=entryOffset+i*ENTRY_BYTES;
+			if (map.getLong(offset)==key) {
+				return map.getLong(offset+8);
+			}
+		}
+		return MISSING;
+	}
+
+	/**
+	*get the book move of a game.
+	*@param game the game, it is not changed
+	*@return the move packed as in Move, or Move.NONE if the position is not in the book
+	*/
+	public int bestMove(PowerConnectFour game) {
+		int move=move(probe(game.symmetricHash()));
+		if (game.isMirrored()) {
+			move=Move.mirror(move, game.sizeCol());
+		}
+		return (move!=Move.NONE && game.isLegal(move)) ? move : Move.NONE;
+	}
+
+	/**
+	*check the checksum of the index and the entries.
+	*@return true if they are as they were written
+	*/
+	public boolean verify() {
+		CRC32C crc=new CRC32C();
+		crc.update(map.duplicate().position(HEADER_BYTES));
+		return (int) crc.getValue()==map.getInt(28);
+	}
+
+	/**
+	*close the file, the mapping stays until it is garbage collected.
+	*@throws IOException if the file can not be closed
+	*/
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	*get the bucket of a key in the index.
+	*@param key the key
+	*@param indexBits bits of the index
+	*@return the top bits of the key
+	*/
+	private static int bucket(long key, int indexBits) {
+		return (indexBits==0) ? 0 : (int) (key>>>(64-indexBits));
+	}
+
+	/**
+	*get the move of an entry.
+	*@param entry the entry
+	*@return the move packed as in Move, Move.NONE for MISSING
+	*/
+	public static int move(long entry) {
+		return (int) (entry>>>32);
+	}
+
+	/**
+	*get the score of an entry, from the point of view of the player to move.
+	*@param entry the entry
+	*@return the score, as PowerConnectFourAI.lastScore
+	*/
+	public static int score(long entry) {
+		return (int) entry;
+	}
+
+	/**
+	*search every position of the first plies of a game and write the book.
+	*@param path file of the book, it is replaced when the new one is complete
+	*@param plies positions reached from the empty board in up to this many plies are searched
+	*@param depth depth of every search
+	*@param millis most milliseconds of every search
+	*@return the number of positions
+	*@throws IOException if the file can not be written
+	*/
+	public static int build(Path path, int plies, int depth, long millis) throws IOException {
+		PowerConnectFourAI ai=new PowerConnectFourAI();
+		Map<Long, Long> book=new HashMap<>();
+		Map<Long, Integer> seen=new HashMap<>();
+		int[][] moves=new int[plies+1][];
+		visit(new PowerConnectFour(), 0, plies, moves, seen, book, ai, depth, millis);
+		ai.shutdown();
+
+		long[] keys=new long[book.size()];
+		int n=0;
+		for (long key : book.keySet()) {
+			keys[n++]=key^Long.MIN_VALUE; //sorted as signed numbers they are in unsigned order
+		}
+		Arrays.sort(keys);
+		int indexBits=0;
+		while (indexBits<MAX_INDEX_BITS && (1<<indexBits)<keys.length) {
+			indexBits++;
+		}
+		int[] index=new int[(1<<indexBits)+1];
+		int next=0;
+		for (int b=0; b<index.length; b++) {
+			while (next<keys.length && bucket(keys[next]^Long.MIN_VALUE, indexBits)<b) {
+				next++;
+			}
+			index[b]=next;
+		}
+
+		Path temp=path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel file=FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream header=new DataOutputStream(Channels.newOutputStream(file));
+			header.write(new byte[HEADER_BYTES]); //written when the checksum is known
+			CRC32C crc=new CRC32C();
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(
+				new CheckedOutputStream(Channels.newOutputStream(file), crc), 1<<16));
+			for (int start : index) {
+				out.writeInt(start);
+			}
+			for (long key : keys) {
+				out.writeLong(key^Long.MIN_VALUE);
+				out.writeLong(book.get(key^Long.MIN_VALUE));
+			}
+			out.flush();
+			file.position(0);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(plies);
+			header.writeInt(depth);
+			header.writeLong(keys.length);
+			header.writeInt(indexBits);
+			header.writeInt((int) crc.getValue());
+			header.flush();
+			file.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return keys.length;
+	}
+
+	/**
+	*search a position and the positions after it, each once from the fewest plies it was reached in.
+	*a mirror image counts as the same position, its positions after it are the mirror images too.
+	*@param game the position, it is the same again when this returns
+	*@param ply plies played
+	*@param plies last ply searched
+	*@param moves move buffers for every ply
+	*@param seen fewest plies every position was reached in
+	*@param book gets the entries
+	*@param ai the searcher
+	*@param depth depth of every search
+	*@param millis most milliseconds of every search
+	*/
+	private static void visit(PowerConnectFour game, int ply, int plies, int[][] moves, Map<Long, Integer> seen,
+		Map<Long, Long> book, PowerConnectFourAI ai, int depth, long millis) {
+		long key=game.symmetricHash();
+		Integer before=seen.get(key);
+		if ((before!=null && before<=ply) || game.hasFourConnected(Token.RED) || game.hasFourConnected(Token.YELLOW)) {
+			return; //done already, or the game is over
+		}
+		seen.put(key, ply);
+		if (!book.containsKey(key)) {
+			int move=ai.bestMove(game, millis, depth);
+			if (game.isMirrored()) {
+				move=Move.mirror(move, game.sizeCol());
+			}
+			book.put(key, ((long) move<<32) | (ai.lastScore() & 0xFFFFFFFFL));
+		}
+		if (ply==plies) {
+			return;
+		}
+		if (moves[ply]==null) {
+			moves[ply]=new int[4*game.sizeCol()*(game.sizeRow()+1)];
+		}
+		int n=game.legalMoves(moves[ply]);
+		for (int i=0; i<n; i++) {
+			int move=moves[ply][i];
+			long undo=game.makeMove(move);
+			if (undo!=PowerConnectFour.ILLEGAL) {
+				visit(game, ply+1, plies, moves, seen, book, ai, depth, millis);
+				game.unmakeMove(undo);
+			}
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*build a book with the arguments plies, depth, milliseconds and file, or run the test cases.
+	*@param args plies, depth, milliseconds of every search and the file
+	*@throws IOException if a book can not be written or read
+	*/
+	public static void main(String[] args) throws IOException {
+		if (args.length==4) {
+			long start=System.nanoTime();
+			int n=build(Path.of(args[3]), Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]));
+			System.out.println(n + " positions in " + (System.nanoTime()-start)/1000000L + " ms");
+			return;
+		}
+
+		Path path=Files.createTempFile("book", ".bin");
+		try {
+			int n=build(path, 2, 6, 1000);
+			try (OpeningBook book=new OpeningBook(path)) {
+				//every position of the first two plies is in the book
+				PowerConnectFour game=new PowerConnectFour();
+				int[] first=new int[64];
+				int[] second=new int[64];
+				boolean all=book.bestMove(game)!=Move.NONE;
+				for (int i=0; i<game.legalMoves(first); i++) {
+					long undo=game.makeMove(first[i]);
+					for (int j=0; j<game.legalMoves(second); j++) {
+						long undo2=game.makeMove(second[j]);
+						all&=book.bestMove(game)!=Move.NONE || game.hasFourConnected(Token.RED);
+						game.unmakeMove(undo2);
+					}
+					all&=book.bestMove(game)!=Move.NONE;
+					game.unmakeMove(undo);
+				}
+				if (all && n==book.entries() && book.verify() && book.plies()==2 && book.depth()==6) {
+					System.out.println("Yay 1!");
+				}
+
+				//a player with the book answers from it without searching
+				PowerConnectFourAI ai=new PowerConnectFourAI();
+				game.drop(3);
+				ai.useBook(book);
+				int booked=ai.bestMove(game, 1000);
+				if (booked==book.bestMove(game) && ai.lastNodes()==0 && ai.lastDepth()==6
+					&& book.probe(game.symmetricHash()+1)==MISSING) {
+					System.out.println("Yay 2!");
+				}
+
+				//the mirror image of a position gets the mirror image of its move
+				PowerConnectFour left=new PowerConnectFour();
+				left.drop(1);
+				PowerConnectFour right=new PowerConnectFour();
+				right.drop(5);
+				if (book.bestMove(right)==Move.mirror(book.bestMove(left), 7) && left.symmetricHash()==right.symmetricHash()
+					&& n<40) {
+					System.out.println("Yay 3!");
+				}
+
+				//microseconds per lookup, only printed since it depends on the machine
+				long start=System.nanoTime();
+				long found=0;
+				for (int k=0; k<1000000; k++) {
+					found+=book.probe(game.symmetricHash()+(k&1))==MISSING ? 0 : 1;
+				}
+				double micros=(System.nanoTime()-start)/1000.0/1000000;
+				if (found==500000) {
+					System.out.println("Yay 4!");
+				}
+				System.out.format("%d positions, %.3f us per probe\n", n, micros);
+			}
+		}
+		finally {
+			Files.deleteIfExists(path);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+import java.nio.ByteBuffer;
+
+/** a compact encoding of a whole position: the tokens, the turn counter and the rows shown.
+ * equal positions always give equal bytes, so the bytes can be compared and hashed.
+ * a board of 7 columns that are at most 8 tokens tall takes 2 longs:
+ * <pre>
+ *   cells   9 bits for every column from column 0 at the low end: the yellow
+ *           tokens from the bottom up and a 1 above the top token, bit 63 is 0
+ *   state   rows shown in the high 32 bits, the turn counter in the low 32 bits
+ * </pre>
+ * any other board, with columns grown tall by power drops, takes more:
+ * <pre>
+ *   header  bit 63 set, the number of columns in bits 32 to 62 and
+ *           the bytes of the whole encoding in the low 32 bits
+ *   state   as above
+ *   columns for every column its height as a varint, then its yellow tokens
+ *           8 rows to a byte from the bottom up
+ * </pre>
+ * the win length is not written, a position is read into a board or game of the same size.
+ * longs are in the byte order of the buffer, big endian unless it was changed.
+ * decoding reads straight from the buffer, nothing is copied out of it first.
+ * @author Fatemah Bahzad
+ */
+
+public final class PositionCodec {
+
+	/**
+	 * bytes of a position in the fixed encoding.
+	 */
+	public static final int FIXED_BYTES = 16;
+
+	/**
+	 * columns and tallest column of the fixed encoding.
+	 */
+	private static final int FIXED_COLS = 7;
+	private static final int FIXED_ROWS = 8;
+	/**
+	 * bits of a column in the fixed encoding.
+	 */
+	private static final int FIELD_BITS = FIXED_ROWS+1;
+	/**
+	 * bit 63 marks the longer encoding.
+	 */
+	private static final long VARIABLE = 1L<<63;
+
+	/**
+	 * a board to copy games into, for every thread.
+	 */
+	private static final ThreadLocal<BitBoard> SCRATCH=ThreadLocal.withInitial(() -> new BitBoard(FIXED_COLS));
+
+	/**
+	 * no instances, only static helpers.
+	 */
+	private PositionCodec() {
+	}
+
+	/**
+	 * pack the tokens of a board into the cells long of the fixed encoding.
+	 * @param board the board
+	 * @return the cells, or -1 if the board needs the longer encoding
+	 */
+	public static long cells(BitBoard board) {
+		if (board.cols()!=FIXED_COLS) {
+			return -1L;
+		}
+		long cells=0;
+		for (int i=0; i<FIXED_COLS; i++) {
+			int h=board.height(i);
+			if (h>FIXED_ROWS) {
+				return -1L;
+			}
+			long field=(1L<<h) | board.word(BitBoard.YELLOW, i, 0);
+			cells|=field<<(i*FIELD_BITS);
+		}
+		return cells;
+	}
+
+	/**
+	 * get the cells long of the board mirrored left to right.
+	 * @param cells cells of the fixed encoding
+	 * @return cells with column i moved to column 6-i
+	 */
+	public static long mirrorCells(long cells) {
+		long mirrored=0;
+		for (int i=0; i<FIXED_COLS; i++) {
+			long field=(cells>>>(i*FIELD_BITS)) & ((1L<<FIELD_BITS)-1);
+			mirrored|=field<<((FIXED_COLS-1-i)*FIELD_BITS);
+		}
+		return mirrored;
+	}
+
+	/**
+	 * get cells that are the same for a board and its mirror image, the smaller of the two.
+	 * unlike a hash, two boards have the same canonical cells only when one is the other or its mirror image.
+	 * @param board the board
+	 * @return the cells, or -1 if the board needs the longer encoding
+	 */
+	public static long canonicalCells(BitBoard board) {
+		long cells=cells(board);
+		return (cells==-1L) ? -1L : Math.min(cells, mirrorCells(cells));
+	}
+
+	/**
+	 * pack the turn counter and rows shown into the state long.
+	 * @param turn the turn counter
+	 * @param rows the rows shown
+	 * @return the state
+	 */
+	public static long state(int turn, int rows) {
+		return ((long) rows<<32) | (turn & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * get the turn counter of a state long.
+	 * @param state the state
+	 * @return the turn counter
+	 */
+	public static int turn(long state) {
+		return (int) state;
+	}
+
+	/**
+	 * get the rows shown of a state long.
+	 * @param state the state
+	 * @return the rows
+	 */
+	public static int rows(long state) {
+		return (int) (state>>>32);
+	}
+
+	/**
+	 * get the bytes a board takes.
+	 * @param board the board
+	 * @return FIXED_BYTES or more
+	 */
+	public static int size(BitBoard board) {
+		if (cells(board)!=-1L) {
+			return FIXED_BYTES;
+		}
+		int size=FIXED_BYTES;
+		for (int i=0; i<board.cols(); i++) {
+			int h=board.height(i);
+			size+=varintSize(h)+((h+7)>>>3);
+		}
+		return size;
+	}
+
+	/**
+	 * write a position at the position of the buffer, which is moved past it.
+	 * @param board the tokens
+	 * @param turn the turn counter
+	 * @param rows the rows shown
+	 * @param out the buffer, it needs size(board) bytes left
+	 * @return the bytes written
+	 */
+	public static int encode(BitBoard board, int turn, int rows, ByteBuffer out) {
+		long cells=cells(board);
+		if (cells!=-1L) {
+			out.putLong(cells);
+			out.putLong(state(turn, rows));
+			return FIXED_BYTES;
+		}
+		int size=size(board);
+		out.putLong(VARIABLE | ((long) board.cols()<<32) | size);
+		out.putLong(state(turn, rows));
+		for (int i=0; i<board.cols(); i++) {
+			int h=board.height(i);
+			putVarint(out, h);
+			for (int r=0; r<h; r+=8) {
+				out.put((byte) (board.word(BitBoard.YELLOW, i, r>>>6)>>>(r & 63)));
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * write a game at the position of the buffer, which is moved past it.
+	 * @param game the game
+	 * @param out the buffer
+	 * @return the bytes written
+	 */
+	public static int encode(PowerConnectFour game, ByteBuffer out) {
+		BitBoard board=scratch(game);
+		game.copyGrid(board);
+		return encode(board, game.turn(), game.sizeRow(), out);
+	}
+
+	/**
+	 * get the bytes of the position at the position of the buffer, without reading it.
+	 * @param in the buffer
+	 * @return the bytes of the position
+	 */
+	public static int length(ByteBuffer in) {
+		long first=in.getLong(in.position());
+		return (first<0) ? (int) first : FIXED_BYTES;
+	}
+
+	/**
+	 * read a position at the position of the buffer, which is moved past it.
+	 * @param in the buffer
+	 * @param board gets the tokens, it needs the number of columns of the position
+	 * @return the state, read it with turn and rows
+	 * @throws IllegalArgumentException if the position has another number of columns
+	 */
+	public static long decode(ByteBuffer in, BitBoard board) {
+		long first=in.getLong();
+		long state=in.getLong();
+		int cols=(first<0) ? (int) ((first & ~VARIABLE)>>>32) : FIXED_COLS;
+		if (cols!=board.cols()) {
+			throw new IllegalArgumentException("Position has " + cols + " columns, the board " + board.cols());
+		}
+		board.clear();
+		if (first>=0) {
+			for (int i=0; i<FIXED_COLS; i++) {
+				int field=(int) (first>>>(i*FIELD_BITS)) & ((1<<FIELD_BITS)-1);
+				int h=31-Integer.numberOfLeadingZeros(field);
+				if (h>0) {
+					board.setWord(i, 0, h, field & ((1<<h)-1));
+				}
+			}
+		}
+		else {
+			for (int i=0; i<cols; i++) {
+				int h=getVarint(in);
+				long yellow=0;
+				for (int r=0; r<h; r+=8) {
+					yellow|=(in.get() & 0xFFL)<<(r & 63);
+					if ((r & 63)==56 || r+8>=h) { //the word is full or the column ends
+						board.setWord(i, r>>>6, Math.min(64, h-(r & ~63)), yellow);
+						yellow=0;
+					}
+				}
+			}
+		}
+		board.rehash();
+		return state;
+	}
+
+	/**
+	 * read a position into a game, at the position of the buffer, which is moved past it.
+	 * @param in the buffer
+	 * @param game gets the position
+	 */
+	public static void decode(ByteBuffer in, PowerConnectFour game) {
+		BitBoard board=scratch(game);
+		long state=decode(in, board);
+		game.restore(board, turn(state), rows(state));
+	}
+
+	/**
+	 * get the board of this thread to copy a game into.
+	 * @param game the game
+	 * @return a board with the columns of the game
+	 */
+	private static BitBoard scratch(PowerConnectFour game) {
+		BitBoard board=SCRATCH.get();
+		if (board.cols()!=game.sizeCol() || board.winLength()!=game.winLength()) {
+			board=new BitBoard(game.sizeCol(), game.winLength());
+			SCRATCH.set(board);
+		}
+		return board;
+	}
+
+	/**
+	 * get the bytes of a varint.
+	 * @param value a number that is not negative
+	 * @return 1 to 5
+	 */
+	private static int varintSize(int value) {
+		int n=1;
+		while ((value>>>=7)!=0) {
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * write a varint, 7 bits to a byte with the high bit set when more follow.
+	 * @param out the buffer
+	 * @param value a number that is not negative
+	 */
+	private static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7F)!=0) {
+			out.put((byte) (value | 0x80));
+			value>>>=7;
+		}
+		out.put((byte) value);
+	}
+
+	/**
+	 * read a varint.
+	 * @param in the buffer
+	 * @return the number
+	 */
+	private static int getVarint(ByteBuffer in) {
+		int value=0;
+		for (int shift=0; ; shift+=7) {
+			byte b=in.get();
+			value|=(b & 0x7F)<<shift;
+			if (b>=0) {
+				return value;
+			}
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		//a middle game fits in two longs and comes back the same
+		PowerConnectFour game=new PowerConnectFour();
+		game.drop(3);
+		game.drop(3);
+		game.drop(4);
+		game.powerDrop(3, 0);
+		game.pop(4);
+		ByteBuffer buffer=ByteBuffer.allocate(1<<12);
+		int size=encode(game, buffer);
+		buffer.flip();
+		PowerConnectFour copy=new PowerConnectFour();
+		decode(buffer, copy);
+		if (size==FIXED_BYTES && !buffer.hasRemaining() && same(game, copy)) {
+			System.out.println("Yay 1!");
+		}
+
+		//random games with towers of power drops, read from a direct buffer at an offset
+		java.util.Random random=new java.util.Random(18);
+		int[] moves=new int[1<<10];
+		boolean all=true;
+		int variable=0;
+		ByteBuffer direct=ByteBuffer.allocateDirect(1<<16);
+		for (int g=0; g<200; g++) {
+			game.reset();
+			int length=random.nextInt(300);
+			for (int m=0; m<length; m++) {
+				int n=game.legalMoves(moves);
+				int move=moves[random.nextInt(n)];
+				if (g%2==0 && Move.kind(move)!=Move.POWER_DROP && random.nextInt(3)!=0) {
+					move=Move.of(Move.POWER_DROP, random.nextInt(2), 0); //build a tower
+				}
+				Move.apply(game, move);
+			}
+			direct.clear();
+			direct.position(7);
+			size=encode(game, direct);
+			variable+=(size>FIXED_BYTES) ? 1 : 0;
+			direct.flip().position(7);
+			all&=length(direct)==size;
+			decode(direct, copy);
+			all&=same(game, copy) && direct.position()==7+size;
+		}
+		if (all && variable>50) {
+			System.out.println("Yay 2!");
+		}
+
+		//equal positions reached by different moves give equal bytes
+		PowerConnectFour a=new PowerConnectFour();
+		a.drop(0);
+		a.drop(1);
+		a.drop(2);
+		a.drop(3);
+		PowerConnectFour b=new PowerConnectFour();
+		b.drop(2);
+		b.drop(3);
+		b.drop(0);
+		b.drop(1);
+		ByteBuffer x=ByteBuffer.allocate(FIXED_BYTES);
+		ByteBuffer y=ByteBuffer.allocate(FIXED_BYTES);
+		encode(a, x);
+		encode(b, y);
+		if (x.flip().equals(y.flip())) {
+			System.out.println("Yay 3!");
+		}
+
+		//a board and its mirror image have the same canonical cells
+		BitBoard left=new BitBoard(7);
+		BitBoard right=new BitBoard(7);
+		left.drop(0, BitBoard.RED);
+		left.drop(2, BitBoard.YELLOW);
+		right.drop(6, BitBoard.RED);
+		right.drop(4, BitBoard.YELLOW);
+		if (canonicalCells(left)==canonicalCells(right) && mirrorCells(cells(left))==cells(right)
+			&& canonicalCells(left)!=canonicalCells(new BitBoard(7))) {
+			System.out.println("Yay 4!");
+		}
+	}
+
+	/**
+	*check whether two games have the same tokens, turn and rows.
+	*@param a a game
+	*@param b another game
+	*@return true if they do
+	*/
+	private static boolean same(PowerConnectFour a, PowerConnectFour b) {
+		if (a.sizeRow()!=b.sizeRow() || a.currentPlayer()!=b.currentPlayer() || a.positionHash()!=b.positionHash()
+			|| a.hasFourConnected(Token.RED)!=b.hasFourConnected(Token.RED)) {
+			return false;
+		}
+		for (int i=0; i<a.sizeCol(); i++) {
+			for (int j=0; j<a.sizeRow(); j++) {
+				if (a.get(i, j)!=b.get(i, j)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
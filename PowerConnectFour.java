@@ -9,19 +9,30 @@ public class PowerConnectFour {
 	/**
 	 *  The grid to contain tokens. Cells can be empty.
 	 */
-	//underlying array of columns for storage 
-	private Column<Token>[] grid;
+	//underlying bitboard, one long mask per player for every column
+	private BitBoard grid;
 
 	/**
-	 *  The fixed number of columns the game grid should have.
+	 * tokens by side index of the bitboard.
+	 */
+	private static final Token[] TOKENS = Token.values();
+
+	/**
+	 *  The number of columns of a standard game grid.
 	 */
 	private static final int NUM_COLS = 7;
 
 	/**
-	 *  The minimum number of rows of the grid _for display_.
+	 *  The minimum number of rows of a standard grid _for display_.
 	 */
 	private static final int MIN_ROWS = 6;
 
+	/**
+	 * the number of columns and the minimum number of rows for display of this game.
+	 */
+	private final int cols;
+	private final int minRows;
+
 	/**
 	 * The two players of the game.
 	 * playerOne is always the first to make a move when the game starts.
@@ -41,6 +52,11 @@ public class PowerConnectFour {
 	 * When grid is displayed, the top row of the grid should always be empty.
 	 */  
 	private static final int MARGIN_ROWS = 1;
+
+	/**
+	 * returned by makeMove when the move is not valid.
+	 */
+	public static final long ILLEGAL = -1L;
 	/**
 	 * keep trach of players turn. 
 	 */
@@ -48,37 +64,97 @@ public class PowerConnectFour {
 	/**
 	 * keep trach of display rows.
 	 */
-	private int displayrow=MIN_ROWS;
+	private int displayrow;
 	/**
-	 * check of rows are completely empty. 
+	 * cached answer of hasFourConnected for each player, updated after every move.
 	 */
-	private int emptyToken;
-	/**
-	 * count the connecting tokens. 
-	 */
-	private int count;
+	private boolean[] connected=new boolean[2];
 	
 	/**
 	*create a grid with NUM_COLS columns.
 	*each column should have DEFAULT_CAPACITY defined in the column class
 	*and a size 0
 	*/
-	@SuppressWarnings("unchecked")	
 	public PowerConnectFour() {
-		this.grid = (Column<Token>[]) new Column[NUM_COLS];
 		// Constructor with no arguments.
-		for (int i=0; i<NUM_COLS;i++) {
-			this.grid[i]=new Column<Token>(); //each col in grid gets DEFAULT_CAPACITY and size=0
-		}
-		
+		this(NUM_COLS, MIN_ROWS, BitBoard.WIN_LENGTH);
+	}
+
+	/**
+	*create a game of another size, where another number of connected tokens wins.
+	*@param cols number of columns, 1 to Move.MAX_COLS
+	*@param minRows minimum number of rows for display, 1 or more
+	*@param winLength number of connected tokens needed to win, 2 or more
+	*/
+	public PowerConnectFour(int cols, int minRows, int winLength) {
+		if (cols<1 || cols>Move.MAX_COLS || minRows<1) {
+			throw new IllegalArgumentException("Can not play on " + cols + " columns and " + minRows + " rows");
+		}
+		this.cols=cols;
+		this.minRows=minRows;
+		this.displayrow=minRows;
+		this.grid = new BitBoard(cols, winLength); //every column starts with no tokens
+	}
+
+	/**
+	*start a new game in this object, red to move on an empty grid.
+	*the grid keeps its memory, so replaying many games needs no new objects.
+	*/
+	public void reset() {
+		grid.clear();
+		pturn=1;
+		displayrow=minRows;
+		connected[0]=false;
+		connected[1]=false;
+	}
+
+	/**
+	*get the turn counter, red moves when it is odd.
+	*@return pturn
+	*/
+	int turn() {
+		return pturn;
+	}
+
+	/**
+	*put the game in a saved state, the cached answers are worked out again.
+	*@param board the tokens, they are copied
+	*@param turn the turn counter, as returned by turn
+	*@param rows the rows shown, as returned by sizeRow
+	*/
+	void restore(BitBoard board, int turn, int rows) {
+		if (board.winLength()!=grid.winLength()) {
+			throw new IllegalArgumentException("Board is won with " + board.winLength() + " tokens, not " + grid.winLength());
+		}
+		grid.copyFrom(board);
+		pturn=turn;
+		displayrow=rows;
+		connected[0]=grid.hasFourConnected(BitBoard.RED);
+		connected[1]=grid.hasFourConnected(BitBoard.YELLOW);
 	}
 
 	/**
 	*get the number of columns.
-	*@return NUM_COLS 
+	*@return cols
 	*/
 	public int sizeCol() { 
-		return NUM_COLS; //default return, make sure to remove/change
+		return cols;
+	}
+
+	/**
+	*get the minimum number of rows in display.
+	*@return minRows
+	*/
+	public int minRows() {
+		return minRows;
+	}
+
+	/**
+	*get the number of connected tokens needed to win.
+	*@return the win length, 4 for a standard game
+	*/
+	public int winLength() {
+		return grid.winLength();
 	}
 	
 	/**
@@ -88,6 +164,26 @@ public class PowerConnectFour {
 	public int sizeRow() { 
 		return displayrow; 
 	}
+
+	/**
+	*get the number of tokens in the column, without copying it.
+	*@param col is the index of the column
+	*@return height of the column
+	*/
+	public int height(int col) {
+		if (col>=cols || col<0) {
+			throw new IndexOutOfBoundsException( "Col " + col + " out of bounds!");
+		}
+		return grid.height(col);
+	}
+
+	/**
+	*get the number of tokens in the tallest column, in O(1) after any move.
+	*@return height of the tallest column, 0 when the grid is empty
+	*/
+	public int maxHeight() {
+		return grid.tallest();
+	}
 	
 	/**
 	*return the empty cell symbol for display.
@@ -106,32 +202,130 @@ public class PowerConnectFour {
 	public Token get(int col, int row){
 		//if col is less then zero OR more then the set number of columns OR row is more then the rows in display 
 		//throw an Exception
-		if (col<0|| col>=NUM_COLS||row>displayrow) { 
+		if (col<0|| col>=cols||row>displayrow||row<0) { 
 			throw new IndexOutOfBoundsException("Col " + col + ", Row "+ row + " out of bounds!");
 		}
-		
-		if (row>=grid[col].size()) {//if row is bigger then the number of values in col
+		return tokenAt(col, row); //null if row is bigger then the number of values in col
+	}
+
+	/**
+	*get the token at the given column and row without checking the display rows.
+	*@param col is the column the token is in 
+	*@param row is the row the token is in 
+	*@return token at col,row or null if the cell is empty
+	*/
+	private Token tokenAt(int col, int row) {
+		int side=grid.get(col, row);
+		if (side==BitBoard.EMPTY) {
 			return null;
 		}
-		return grid[col].get(row); //return the token 
+		return TOKENS[side];
 	}
 
 	/**
-	*get the column at the given index.
+	*get a copy of the column at the given index.
+	*changing the returned column does not change the game.
 	*@param col is the index the column is in 
 	*@return column at the given index
 	*/
 	public Column<Token> getColumn(int col){
 		//if col is more then the set numbers of columns OR less then zero throw Exception
-		if (col>=NUM_COLS || col<0) {
+		if (col>=cols || col<0) {
 			throw new IndexOutOfBoundsException( "Col " + col + " out of bounds!");
 		}
-		return grid[col];
-		
+		Column<Token> column=new Column<Token>();
+		for (int i=0; i<grid.height(col); i++) {
+			column.add(tokenAt(col, i)); //copy the tokens from the bottom up
+		}
+		return column;
+
+	}
+
+	/**
+	*copy the column at the given index into a column owned by the caller.
+	*the same TokenColumn can be reused so nothing is allocated once it is big enough.
+	*@param col is the index the column is in
+	*@param column the column to fill, its old tokens are removed
+	*/
+	public void getColumn(int col, TokenColumn column){
+		if (col>=cols || col<0) {
+			throw new IndexOutOfBoundsException( "Col " + col + " out of bounds!");
+		}
+		column.clear();
+		for (int i=0; i<grid.height(col); i++) {
+			column.add(tokenAt(col, i));
+		}
 	}
 	
 	/**
-	*get the Token of the current player. 
+	*copy the tokens of the game into a bitboard owned by the caller, used by search.
+	*@param board the board to fill, it must have sizeCol() columns
+	*/
+	public void copyGrid(BitBoard board){
+		board.copyFrom(grid);
+	}
+
+	/**
+	*get the zobrist hash of the position, the tokens and the player to move.
+	*it is kept up to date by every move so this is O(1).
+	*@return 64 bit hash of the position
+	*/
+	public long positionHash(){
+		return grid.hash(currentPlayer().ordinal());
+	}
+
+	/**
+	*get a hash of the position that is the same for the position and its mirror image.
+	*use it as the key of tables that keep both as one, moves kept under it
+	*belong to the mirror image when isMirrored is true.
+	*@return 64 bit hash of the position or its mirror image
+	*/
+	public long symmetricHash(){
+		return grid.symmetricHash(currentPlayer().ordinal());
+	}
+
+	/**
+	*check whether symmetricHash is the hash of the mirror image.
+	*moves are translated between the two with Move.mirror(move, sizeCol()).
+	*@return true if it is the mirror image
+	*/
+	public boolean isMirrored(){
+		return grid.mirrored(currentPlayer().ordinal());
+	}
+
+	/**
+	*score the position for the player, from the count of tokens in every line of winLength.
+	*lines only the player has tokens in add to the score, lines only the other player
+	*has tokens in take away, and every column where a drop completes a line counts as
+	*much as a full line. the first call counts the lines, after that every move keeps
+	*the counts, so this only looks at the top cell of every column.
+	*@param player the token to score for
+	*@return score for the player, positive when the player is ahead
+	*/
+	public int evaluate(Token player){
+		return grid.evaluate(player.ordinal());
+	}
+
+	/**
+	*count the lines where the player misses only one token and the cell is empty.
+	*@param player the token to count for
+	*@return number of open threes
+	*/
+	public int openThrees(Token player){
+		return grid.threats().threes(player.ordinal());
+	}
+
+	/**
+	*count the columns where a drop of the player would complete a line.
+	*@param player the token to count for
+	*@return number of playable winning cells
+	*/
+	public int winningCells(Token player){
+		return grid.threats().playable(player.ordinal());
+	}
+
+	/**
+	*get the Token of the current player.
 	*@return the token of the current player
 	*/
 
@@ -149,13 +343,12 @@ public class PowerConnectFour {
 	*/
 
 	public boolean drop(int col){
-		if (col>=NUM_COLS || col<0) {//if the col is out of bound  return false
+		if (col>=cols || col<0) {//if the col is out of bound  return false
 			return false;
 		}
-		grid[col].add(currentPlayer());//add the token of the current player
-		if (grid[col].size()==displayrow) {
-			displayrow++; //add one to the display rows if needed
-		}
+		grid.drop(col, currentPlayer().ordinal());//add the token of the current player
+		fitRows(); //add one to the display rows if needed
+		updateConnected(col, grid.height(col)-1, false); //only the new token changed
 		pturn++; //move the turn to the next player if it is a valid  move
 		return true; 
 	}
@@ -168,14 +361,13 @@ public class PowerConnectFour {
 	*@return true if it is a valid  move, and false if it is not
 	*/
 	public boolean powerDrop(int col, int row){
-		if (col>=NUM_COLS || col<0 || row>grid[col].size()) {
+		if (col>=cols || col<0 || row<0 || row>grid.height(col)) {
 			return false; //if the col in more then 7 or less then 0
 			//can not insert a "floating" return false
 		}
-		grid[col].add(row,currentPlayer());//add the token of the current player
-		if (grid[col].size()==displayrow) {
-			displayrow++;//add one to the display rows if needed
-		}
+		grid.powerDrop(col, row, currentPlayer().ordinal());//add the token of the current player
+		fitRows();//add one to the display rows if needed
+		updateConnected(col, row, true); //the tokens above row moved up
 		pturn++;//move the turn to the next player if it is a valid  move
 		return true; 
 	}
@@ -186,27 +378,14 @@ public class PowerConnectFour {
 	*@return true if it is a valid move, and false if it is not
 	*/
 	public boolean pop(int col){
-		emptyToken=0; //reset to count the empty tokens in the rowa
-		if(grid[col].get(0)!=currentPlayer()||col>NUM_COLS||col<0) {
+		if(col>=cols||col<0||tokenAt(col,0)!=currentPlayer()) {
 			return false;
 			//if it is not the current player token OR col is more them the set number of columns
 			//OR col is less then 0 return false
 		}
-		grid[col].delete(0); //remove the token 
-		for (int i=0;i<NUM_COLS ;i++) {
-			if (grid[i].size()==0) { //if there is no tokens in the column
-				emptyToken++;//count the empty tokens
-				continue;
-			}
-			if (grid[i].size()<displayrow-1) {//if there is more then 1 empty row
-				emptyToken++;//how many empty col in the row under the margin row 
-			}
-		}
-		//all 7 cols are empty remove one row to leave only one empty on the top
-		if (emptyToken==NUM_COLS && displayrow>=MIN_ROWS+1) { 
-			displayrow-=1; 
-			emptyToken=0;//reset 
-		}
+		grid.pop(col); //remove the token 
+		updateConnected(col, 0, true); //the whole column moved down
+		fitRows(); //leave only one empty row on the top
 
 		pturn++;// move to the next player turn if it was a valid 
 
@@ -221,32 +400,96 @@ public class PowerConnectFour {
 	*@return true if it is a valid move, and false if it is not
 	*/
 	public boolean powerPop(int col, int row){
-		emptyToken=0;//reset to zero
 		//if it is not the current player token OR col is more them the set number of columns
 		//OR col is less then 0 return false
-		if(get(col,row)!=currentPlayer()||col>NUM_COLS||col<0) {
+		if(col>=cols||col<0||row<0||tokenAt(col,row)!=currentPlayer()) {
 			return false;
 		}
-		grid[col].delete(row); //delete the token 
-		for (int i=0;i<NUM_COLS ;i++) {
-			if (grid[i].size()==0) { //if there is no tokens in the column
-				emptyToken++;//count the empty tokens
-				continue;
+		grid.powerPop(col, row); //delete the token 
+		updateConnected(col, row, true); //the tokens above row moved down
+		fitRows(); //leave only one empty row on the top
+
+		pturn++; // move to the next player turn if it was a valid 
+		return true; 
+	}
+	
+	/**
+	*set the display rows after a move, one empty margin row above the tallest column
+	*and never less then minRows. the board keeps the tallest column, so this is O(1).
+	*/
+	private void fitRows(){
+		displayrow=Math.max(minRows, grid.tallest()+MARGIN_ROWS);
+	}
+
+	/**
+	*update the cached connected answers after a move changed the column from the row up.
+	*a new line of winLength has to go through one of the changed cells, so only those lines are checked.
+	*@param col is the index of the column the move changed
+	*@param row is the lowest row that changed
+	*@param shifted true if tokens already in the column moved, which can break a connected line
+	*/
+	private void updateConnected(int col, int row, boolean shifted){
+		for (int side=0; side<2; side++) {
+			if (connected[side] && shifted) {
+				connected[side]=grid.hasFourConnected(side); //the line may be broken, scan again
 			}
-			if (grid[i].size()<displayrow-1) {//if there is more then 1 empty row
-				emptyToken++;//how many empty col in the row before the margin row
+			else if (!connected[side]) {
+				connected[side]=grid.hasFourConnected(side, col, row);
 			}
 		}
-		//all 7 cols are empty remove one row to leave only one empty on the top
-		if (emptyToken==NUM_COLS && displayrow>=MIN_ROWS+1) { 
-			displayrow-=1;  
-			emptyToken=0;//reset
+	}
+
+	/**
+	*list every legal move of the current player into a buffer owned by the caller.
+	*power moves are listed for every valid column and row, nothing is changed.
+	*@param buffer where the moves are written, packed as in Move
+	*@return number of legal moves, more then buffer.length if the buffer was too small
+	*/
+	public int legalMoves(int[] buffer){
+		return MoveGenerator.generate(grid, currentPlayer().ordinal(), buffer, false);
+	}
+
+	/**
+	*check whether the current player can make the move, without making it.
+	*@param move the move packed as in Move
+	*@return true if it is a valid move, and false if it is not
+	*/
+	public boolean isLegal(int move){
+		return MoveGenerator.isLegal(grid, currentPlayer().ordinal(), move);
+	}
+
+	/**
+	*make a move for the current player and return what is needed to take it back.
+	*the undo record packs the move in the low 32 bits, displayrow in the next 30 bits
+	*and the two cached four connected answers in the top 2 bits.
+	*@param move the move packed as in Move
+	*@return the undo record to give to unmakeMove, or ILLEGAL if the move is not valid
+	*/
+	public long makeMove(int move){
+		long undo=(move & 0xFFFFFFFFL) | ((long) displayrow<<32)
+			| (connected[0] ? 1L<<62 : 0L) | (connected[1] ? 1L<<63 : 0L);
+		if (!Move.apply(this, move)) {
+			return ILLEGAL;
 		}
+		return undo;
+	}
 
-		pturn++; // move to the next player turn if it was a valid 
-		return true; 
+	/**
+	*take back the last move made with makeMove.
+	*grid, pturn, displayrow and the cached answers are restored exactly.
+	*@param undo the record returned by makeMove
+	*/
+	public void unmakeMove(long undo){
+		if (undo==ILLEGAL) {
+			throw new IllegalArgumentException("Can not take back an invalid move");
+		}
+		pturn--; //the player who made the move is the current player again
+		grid.undo((int) undo, currentPlayer().ordinal());
+		displayrow=(int) (undo>>>32) & 0x3FFFFFFF;
+		connected[0]=(undo & 1L<<62)!=0;
+		connected[1]=(undo & 1L<<63)!=0;
 	}
-	
+
 	/**
 	*count the number of consecutive tokens for the given player in a row, one of them. 
 	*has to be in column, row
@@ -256,25 +499,25 @@ public class PowerConnectFour {
 	*@return count of the consecutive tokens in a row
 	*/
 	public int countRow(int col, int row, Token player){ //do it in one loop
-		count=0;//reset count 
+		int count=0;//local count, so reading the game does not write to it
 		//if the token at that location is not the wanted player token return 0
-		if (row>displayrow ||row>grid[col].size()||col>NUM_COLS||col<0) {
+		if (row>displayrow ||row>grid.height(col)||col>cols||col<0) {
 			return 0;
 		}
-		for (int i=0; i<NUM_COLS;i++) {
+		for (int i=0; i<cols;i++) {
 			//if row if more then the size of the column continue
-			if (row>=grid[i].size()) {
+			if (row>=grid.height(i)) {
 				continue;
 			}
 			//if it is not the player token and it is before the starting point
-			if (grid[i].get(row)!=player && i<col) {
+			if (tokenAt(i,row)!=player && i<col) {
 				count=0;//reset the count
 			}
 			//if it is not the player token and it is after the starting point
-			if (grid[i].get(row)!=player && i>=col) {
+			if (tokenAt(i,row)!=player && i>=col) {
 				break; //stop the count
 			}
-			if (grid[i].get(row)==player) {
+			if (tokenAt(i,row)==player) {
 				count++; //if it is the player token count it 
 			}
 		}
@@ -291,21 +534,21 @@ public class PowerConnectFour {
 	*@return count of the consecutive tokens in a column
 	*/
 	public int countCol(int col, int row, Token player){
-		count=0;//reset the count
+		int count=0;//local count
 		//if the token at that location is not the wanted player token return 0
-		if (row>displayrow ||row>grid[col].size()||col>NUM_COLS||col<0) { 
+		if (row>displayrow ||row>grid.height(col)||col>cols||col<0) { 
 			return 0;
 		}
-		for (int i=0; i<grid[col].size();i++) {
+		for (int i=0; i<grid.height(col);i++) {
 			//if it is not the player token and it is after the starting point
-			if (grid[col].get(i)!=player && i>=row) {
+			if (tokenAt(col,i)!=player && i>=row) {
 				break; //break the loop
 			}
 			//if it is not the player token and it is before the starting point
-			if (grid[col].get(i)!=player && i<row) {
+			if (tokenAt(col,i)!=player && i<row) {
 				count=0; //reset the count
 			}
-			if (grid[col].get(i)==player) {
+			if (tokenAt(col,i)==player) {
 				count++;//if it is the player token count it
 
 			}
@@ -322,26 +565,26 @@ public class PowerConnectFour {
 	*@return count of the consecutive tokens in a major diagonal
 	*/
 	public int countMajorDiagonal(int col, int row, Token player){
-		count=0;
-		if (row>displayrow ||row>grid[col].size()||col>NUM_COLS||col<0) {//if the token at that location is not the wanted player token 
+		int count=0;
+		if (row>displayrow ||row>grid.height(col)||col>cols||col<0) {//if the token at that location is not the wanted player token 
 			return 0;
 		}
-		for(int i=col,j=row;i<NUM_COLS && j>=0;i++,j--) {//going down to the right
-			if (row>=grid[i].size()) {//if row is bigger then the size of the column
+		for(int i=col,j=row;i<cols && j>=0;i++,j--) {//going down to the right
+			if (row>=grid.height(i)) {//if row is bigger then the size of the column
 				continue;
 			}
-			if (grid[i].get(j)==player) {//if it is the players token
+			if (tokenAt(i,j)==player) {//if it is the players token
 				count++;//count it
 			}
 			else {
 				break;
 			}
 		}
-		for(int i=col-1,j=row+1;i>0 && j<grid[i].size();i--,j++) {//going up to the left
-			if (row>=grid[i].size()) { //if row is bigger then the size of the column
+		for(int i=col-1,j=row+1;i>0 && j<grid.height(i);i--,j++) {//going up to the left
+			if (row>=grid.height(i)) { //if row is bigger then the size of the column
 				continue;
 			}
-			if (grid[i].get(j)==player) { //if it is the players token 
+			if (tokenAt(i,j)==player) { //if it is the players token 
 				count++;//count it
 			}
 			else {
@@ -359,15 +602,15 @@ public class PowerConnectFour {
 	*@return count of the consecutive tokens in a minor diagonal
 	*/
 	public int countMinorDiagonal(int col, int row, Token player){
-		count=0;
-		if (row>displayrow ||row>grid[col].size()|| col>NUM_COLS||col<0) {//if the token at that location is not the wanted player token 
+		int count=0;
+		if (row>displayrow ||row>grid.height(col)|| col>cols||col<0) {//if the token at that location is not the wanted player token 
 			return 0;
 		}
-		for(int i=col,j=row;i<NUM_COLS && j<grid[i].size();i++,j++) {//going up to the right
-			if (row>=grid[i].size()) { //if row is bigger then the size of the column
+		for(int i=col,j=row;i<cols && j<grid.height(i);i++,j++) {//going up to the right
+			if (row>=grid.height(i)) { //if row is bigger then the size of the column
 				continue;
 			}
-			if (grid[i].get(j)==player) {//if it is the players token
+			if (tokenAt(i,j)==player) {//if it is the players token
 				count++;//count it
 			}
 			else {
@@ -375,10 +618,10 @@ public class PowerConnectFour {
 			}
 		}
 		for(int i=col,j=row;i>0 && j>0;i--,j--) {//going down to the left
-			if (row>=grid[i].size()) {//if row is bigger then the size of the column
+			if (row>=grid.height(i)) {//if row is bigger then the size of the column
 				continue;
 			}
-			if (grid[i].get(j)==player) {//if it is the players token
+			if (tokenAt(i,j)==player) {//if it is the players token
 				count++;//count it
 			}
 			else {
@@ -399,8 +642,8 @@ public class PowerConnectFour {
 	
 	/**
 	 * The method that checks whether the specified player has four connected tokens
-	 * horizontally, vertically, or diagonally.  It relies on the methods of countRow(),
-	 * countCol(), countMajorDiagonal(), and countMinorDiagonal() to work correctly.
+	 * horizontally, vertically, or diagonally.  The answer is kept up to date by every
+	 * move, which only checks the lines going through the cells it changed.
 	 *
 	 * @param player the token to be checked
 	 * @return whether the given player has four tokens connected
@@ -410,15 +653,7 @@ public class PowerConnectFour {
 		// in a column, or in a diagonal line (major or minor). Return true if 
 		// so; return false otherwise.	
 		
-		for (int j = 0; j<sizeCol(); j++){
-			for (int i = 0; i<sizeRow(); i++){
-				if (countRow(j, i, player)>=4 || countCol(j, i, player)>=4
-					|| countMajorDiagonal(j, i, player)>=4 
-					|| countMinorDiagonal(j, i, player)>=4 )
-					return true;
-			}
-		}
-		return false;
+		return connected[player.ordinal()];
 		
 	}
 
@@ -491,6 +726,79 @@ public class PowerConnectFour {
 			&& myGame.countMinorDiagonal(2,0,Token.YELLOW) == 1){
 			System.out.println("Yay 6!");												
 		}
+
+		//make and take back moves, everything goes back the way it was
+		long hash=myGame.positionHash();
+		long undo1=myGame.makeMove(Move.of(Move.POWER_DROP, 3, 0));
+		long undo2=myGame.makeMove(Move.of(Move.POWER_POP, 2, 1));
+		long undo3=myGame.makeMove(Move.of(Move.POP, 0, 0));
+		if (undo1!=ILLEGAL && undo2!=ILLEGAL && undo3==ILLEGAL && myGame.sizeRow() == 6
+			&& myGame.getColumn(2).size() == 4 && myGame.currentPlayer() == Token.YELLOW){
+			myGame.unmakeMove(undo2);
+			myGame.unmakeMove(undo1);
+			if (myGame.positionHash() == hash && myGame.currentPlayer() == Token.YELLOW
+				&& myGame.get(2,1) == Token.RED && myGame.get(2,4) == Token.YELLOW
+				&& myGame.get(3,1) == Token.RED){
+				System.out.println("Yay 7!");
+			}
+		}
+
+		//legal moves, every one of them is accepted and nothing else is
+		int[] buffer=new int[64];
+		int n=myGame.legalMoves(buffer);
+		boolean all=n<=buffer.length;
+		for (int i=0; i<n && all; i++) {
+			all=myGame.isLegal(buffer[i]);
+		}
+		//yellow: 7 drops, pops of columns 2 and 3, power drops at every row up to the top
+		//of every column (6+3 in columns 2 and 3, 1 in the 5 empty ones), power pops of its 3 tokens
+		if (all && n == 7+2+(6+3+5)+3 && !myGame.isLegal(Move.of(Move.POP, 0, 0))
+			&& !myGame.isLegal(Move.of(Move.POWER_POP, 2, 1)) && myGame.isLegal(Move.of(Move.POWER_DROP, 2, 5))){
+			System.out.println("Yay 8!");
+		}
+
+		//connect five on a wide grid, four in a row is not enough
+		PowerConnectFour wide=new PowerConnectFour(120, 4, 5);
+		for (int i=0; i<4; i++) {
+			wide.drop(100+i); //red
+			wide.drop(100+i); //yellow on top
+		}
+		boolean four=wide.hasFourConnected(Token.RED);
+		wide.powerDrop(104, 0); //red completes five in the bottom row
+		if (!four && wide.hasFourConnected(Token.RED) && wide.sizeCol()==120 && wide.sizeRow()==4
+			&& wide.winLength()==5 && !wide.drop(120)){
+			System.out.println("Yay 9!");
+		}
+
+		//the display rows follow the tallest column down, one row for every power pop
+		PowerConnectFour tower=new PowerConnectFour();
+		for (int i=0; i<30; i++) {
+			tower.drop(0); //red and yellow take turns, no four in the column
+		}
+		boolean fits=tower.sizeRow()==31 && tower.maxHeight()==30 && tower.height(0)==30;
+		while (fits && tower.maxHeight()>1) {
+			int row=0;
+			while (tower.get(0, row)!=tower.currentPlayer()) {
+				row++;
+			}
+			fits=tower.powerPop(0, row) && tower.sizeRow()==Math.max(MIN_ROWS, tower.maxHeight()+1);
+		}
+		if (fits && tower.maxHeight()==1 && tower.sizeRow()==MIN_ROWS) {
+			System.out.println("Yay 10!");
+		}
+
+		//red gets three in the bottom row with both ends open, yellow only two in a column
+		PowerConnectFour threats=new PowerConnectFour();
+		for (int i=1; i<3; i++) {
+			threats.drop(i); //red
+			threats.drop(6); //yellow
+		}
+		int before=threats.evaluate(Token.RED);
+		threats.drop(3);
+		if (threats.openThrees(Token.RED)==2 && threats.winningCells(Token.RED)==2 && threats.winningCells(Token.YELLOW)==0
+			&& before>0 && threats.evaluate(Token.RED)>before && threats.evaluate(Token.YELLOW)==-threats.evaluate(Token.RED)){
+			System.out.println("Yay 11!");
+		}
 			
 	
 	}
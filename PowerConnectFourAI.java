@@ -0,0 +1,624 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** a computer player for Power Connect Four.
+ * negamax search with alpha-beta pruning over all four kinds of moves,
+ * iterative deepening until the time budget runs out, move ordering
+ * (table move first, then history and center columns) and a fixed size
+ * transposition table that keeps the deeper entry when two positions share a slot.
+ * with more then one thread the search is lazy SMP: every thread searches the
+ * same position with its own board and history, and they help each other
+ * only through the shared lock-free transposition table.
+ * @author Fatemah Bahzad
+ */
+
+public class PowerConnectFourAI {
+
+	/**
+	 * score of a win found at the root, wins found deeper score a little less.
+	 */
+	public static final int WIN = 1000000;
+
+	/**
+	 * larger then any score.
+	 */
+	private static final int INFINITY = WIN+1;
+
+	/**
+	 * the deepest the search can go.
+	 */
+	private static final int MAX_PLY = 64;
+
+	/**
+	 * default number of transposition table entries, as a power of two.
+	 */
+	private static final int DEFAULT_TABLE_BITS = 20;
+
+	/**
+	 * how many nodes to search between two looks at the clock.
+	 */
+	private static final int CLOCK_NODES = 1023;
+
+	/**
+	 * the largest score of a position that is not won.
+	 */
+	private static final int MAX_SCORE = WIN/2;
+
+	/**
+	 * a history value above this halves the table of its side, so history*8
+	 * stays far from overflowing in a long search.
+	 */
+	private static final int MAX_HISTORY = 1<<24;
+
+	/**
+	 * the table shared by every thread.
+	 */
+	private final TranspositionTable table;
+	/**
+	 * one searcher per thread, searcher 0 runs on the calling thread.
+	 */
+	private final Searcher[] searchers;
+	/**
+	 * runs the helper searchers, created on the first parallel search.
+	 */
+	private ExecutorService pool;
+
+	/**
+	 * when the current search has to stop.
+	 */
+	private volatile long deadline;
+	private volatile boolean stop;
+	/**
+	 * the deepest iteration of the current search.
+	 */
+	private int maxDepth;
+	/**
+	 * answers the openings without searching, or null.
+	 */
+	private OpeningBook book;
+
+	/**
+	 * statistics of the last search.
+	 */
+	private int lastDepth;
+	private int lastScore;
+	private long lastNodes;
+	private long lastNanos;
+
+	/**
+	*create a single thread player with the default transposition table size.
+	*/
+	public PowerConnectFourAI() {
+		this(DEFAULT_TABLE_BITS, 1);
+	}
+
+	/**
+	*create a single thread player with 2^tableBits transposition table entries.
+	*@param tableBits log2 of the number of table entries
+	*/
+	public PowerConnectFourAI(int tableBits) {
+		this(tableBits, 1);
+	}
+
+	/**
+	*create a player searching with the given number of threads.
+	*@param tableBits log2 of the number of table entries
+	*@param threads number of threads searching, 1 or more
+	*/
+	public PowerConnectFourAI(int tableBits, int threads) {
+		if (threads<1) {
+			throw new IllegalArgumentException("Threads must be positive");
+		}
+		table=new TranspositionTable(tableBits);
+		searchers=new Searcher[threads];
+		for (int i=0; i<threads; i++) {
+			searchers[i]=new Searcher();
+		}
+	}
+
+	/**
+	*search the game for the best move of the current player.
+	*@param game the game to search, it is not changed
+	*@param timeBudget milliseconds the search can take
+	*@return the best move packed as in Move, use Move.apply to play it
+	*/
+	public int bestMove(PowerConnectFour game, long timeBudget) {
+		return bestMove(game, timeBudget, MAX_PLY-1);
+	}
+
+	/**
+	*search the game for the best move of the current player, no deeper then the given depth.
+	*a position in the opening book is answered from the book without searching.
+	*@param game the game to search, it is not changed
+	*@param timeBudget milliseconds the search can take
+	*@param depth the deepest iteration, 1 or more
+	*@return the best move packed as in Move, use Move.apply to play it
+	*/
+	public int bestMove(PowerConnectFour game, long timeBudget, int depth) {
+		long start=System.nanoTime();
+		if (book!=null) {
+			int move=book.bestMove(game);
+			if (move!=Move.NONE) {
+				lastDepth=book.depth();
+				lastScore=OpeningBook.score(book.probe(game.symmetricHash()));
+				lastNodes=0;
+				lastNanos=System.nanoTime()-start;
+				return move;
+			}
+		}
+		int side=game.currentPlayer().ordinal();
+		for (Searcher searcher : searchers) {
+			searcher.prepare(game.sizeCol());
+			game.copyGrid(searcher.board);
+		}
+		deadline=start+timeBudget*1000000L;
+		maxDepth=Math.max(1, Math.min(depth, MAX_PLY-1));
+		stop=false;
+		table.newSearch();
+
+		//helpers start one ply apart so they do not all search the same depth
+		Future<?>[] helpers=new Future<?>[searchers.length-1];
+		for (int i=1; i<searchers.length; i++) {
+			Searcher helper=searchers[i];
+			int firstDepth=1+(i&1);
+			helpers[i-1]=pool().submit(() -> helper.iterate(side, firstDepth));
+		}
+		int best=searchers[0].iterate(side, 1);
+		stop=true;
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException("Helper search failed", e.getCause());
+			}
+		}
+
+		lastDepth=searchers[0].depth;
+		lastScore=searchers[0].score;
+		lastNodes=0;
+		for (Searcher searcher : searchers) {
+			lastNodes+=searcher.nodes;
+		}
+		lastNanos=System.nanoTime()-start;
+		return best;
+	}
+
+	/**
+	*answer the positions of an opening book from the book, null to always search.
+	*@param book the book
+	*/
+	public void useBook(OpeningBook book) {
+		this.book=book;
+	}
+
+	/**
+	*get the number of threads searching.
+	*@return number of threads
+	*/
+	public int threads() {
+		return searchers.length;
+	}
+
+	/**
+	*get the depth of the last finished iteration of the last search.
+	*@return depth in plies
+	*/
+	public int lastDepth() {
+		return lastDepth;
+	}
+
+	/**
+	*get the score of the last finished iteration, from the point of view of the player to move.
+	*@return the score, close to WIN or -WIN when the game is decided
+	*/
+	public int lastScore() {
+		return lastScore;
+	}
+
+	/**
+	*get the number of positions visited by the last search, by every thread.
+	*@return number of nodes
+	*/
+	public long lastNodes() {
+		return lastNodes;
+	}
+
+	/**
+	*get how fast the last search went, by every thread together.
+	*@return nodes per second
+	*/
+	public long lastNodesPerSecond() {
+		return (lastNanos==0) ? 0 : lastNodes*1000000000L/lastNanos;
+	}
+
+	/**
+	*get the statistics of the last search on one line.
+	*@return threads, depth, nodes and nodes per second of the last search
+	*/
+	public String lastStats() {
+		StringBuilder s=new StringBuilder();
+		s.append("threads ").append(threads()).append(", depth ").append(lastDepth)
+			.append(", ").append(lastNodes).append(" nodes in ").append(lastNanos/1000000L)
+			.append(" ms, ").append(lastNodesPerSecond()).append(" nodes/s (");
+		for (int i=0; i<searchers.length; i++) {
+			s.append(i==0 ? "" : " ").append(searchers[i].nodes);
+		}
+		return s.append(")").toString();
+	}
+
+	/**
+	*stop the helper threads, the player can still search on the calling thread after this.
+	*/
+	public void shutdown() {
+		if (pool!=null) {
+			pool.shutdown();
+			pool=null;
+		}
+	}
+
+	/**
+	*get the pool running the helpers, its threads do not keep the program alive.
+	*@return the pool
+	*/
+	private ExecutorService pool() {
+		if (pool==null) {
+			pool=Executors.newFixedThreadPool(searchers.length-1, r -> {
+				Thread t=new Thread(r, "PowerConnectFourAI helper");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+
+	/** the state of one searching thread.
+	 * nothing in here is shared, the threads only meet in the transposition table.
+	 */
+	private final class Searcher {
+
+		/**
+		 * the board searched, moves are made and taken back on it.
+		 */
+		private BitBoard board;
+		/**
+		 * moves and their ordering scores for every ply.
+		 */
+		private int[][] moves;
+		private int[][] order;
+		/**
+		 * history[side][kind*cols+col] grows when the move caused a cutoff,
+		 * it is halved before every search and whenever a value passes MAX_HISTORY.
+		 */
+		private int[][] history;
+
+		/**
+		 * bookkeeping of the current search.
+		 */
+		private boolean aborted;
+		private long nodes;
+		private int rootMove;
+		private int depth;
+		private int score;
+
+		/**
+		*deepen the search one ply at a time until the time is up or the game is decided.
+		*@param side the player to move
+		*@param firstDepth the first depth searched
+		*@return the best move of the last finished depth
+		*/
+		int iterate(int side, int firstDepth) {
+			aborted=false;
+			nodes=0;
+			depth=0;
+			score=0;
+			int best=Move.NONE;
+			for (int d=Math.min(firstDepth, maxDepth); d<=maxDepth; d++) {
+				rootMove=Move.NONE;
+				int s=negamax(0, d, -INFINITY, INFINITY, side);
+				if (aborted) {
+					break; //keep the move of the last finished depth
+				}
+				best=rootMove;
+				depth=d;
+				score=s;
+				if (s>=WIN-MAX_PLY || s<=-WIN+MAX_PLY) {
+					break; //the game is decided, searching deeper will not change it
+				}
+			}
+			if (best==Move.NONE) {
+				//not even the first depth finished, use what was found or the first move
+				best=(rootMove!=Move.NONE) ? rootMove : moves[0][0];
+			}
+			return best;
+		}
+
+		/**
+		*negamax search with alpha-beta pruning.
+		*@param ply distance from the root
+		*@param depth plies left to search
+		*@param alpha lower bound of the score
+		*@param beta upper bound of the score
+		*@param side the player to move
+		*@return score of the position for the player to move
+		*/
+		private int negamax(int ply, int depth, int alpha, int beta, int side) {
+			if ((++nodes & CLOCK_NODES)==0 && (stop || System.nanoTime()>deadline)) {
+				aborted=true;
+			}
+			if (aborted) {
+				return 0;
+			}
+			if (depth==0 || ply==MAX_PLY-1) {
+				return evaluate(side);
+			}
+
+			//look up the position in the table, a position and its mirror image share an entry
+			long key=board.symmetricHash(side);
+			boolean mirrored=board.mirrored(side);
+			long entry=table.probe(key);
+			int tableMove=Move.NONE;
+			if (entry!=0) {
+				tableMove=TranspositionTable.move(entry);
+				if (mirrored) {
+					tableMove=Move.mirror(tableMove, board.cols());
+				}
+				int score=TranspositionTable.score(entry);
+				int bound=TranspositionTable.bound(entry);
+				if (ply>0 && TranspositionTable.depth(entry)>=depth) {
+					if (bound==TranspositionTable.EXACT
+						|| (bound==TranspositionTable.LOWER && score>=beta)
+						|| (bound==TranspositionTable.UPPER && score<=alpha)) {
+						return score;
+					}
+				}
+			}
+
+			int needed=MoveGenerator.maxMoves(board);
+			if (moves[ply].length<needed) {
+				moves[ply]=new int[needed*2]; //grows with the board, then it is reused
+				order[ply]=new int[needed*2];
+			}
+			int n=MoveGenerator.generate(board, side, moves[ply], true);
+			scoreMoves(ply, n, side, tableMove);
+			int alpha0=alpha;
+			int best=-INFINITY;
+			int bestMove=Move.NONE;
+			for (int i=0; i<n; i++) {
+				int move=pick(ply, i, n);
+				int from=board.play(move, side);
+				int score;
+				if (board.hasFourConnected(side, Move.col(move), from)) {
+					score=WIN-ply-1; //the mover is checked first, like in PowerConnectFourGUI
+				}
+				else if (board.hasFourConnected(1-side, Move.col(move), from)) {
+					score=-(WIN-ply-1); //a pop can connect four for the other player
+				}
+				else {
+					score=-negamax(ply+1, depth-1, -beta, -alpha, 1-side);
+				}
+				board.undo(move, side);
+				if (aborted) {
+					return 0;
+				}
+				if (score>best) {
+					best=score;
+					bestMove=move;
+					if (ply==0) {
+						rootMove=move;
+					}
+				}
+				if (score>alpha) {
+					alpha=score;
+				}
+				if (alpha>=beta) {
+					int[] counts=history[side];
+					int index=historyIndex(move, board.cols());
+					counts[index]+=depth*depth;
+					if (counts[index]>MAX_HISTORY) {
+						age(counts);
+					}
+					break;
+				}
+			}
+
+			int bound=(best<=alpha0) ? TranspositionTable.UPPER
+				: (best>=beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, depth, best, bound, mirrored ? Move.mirror(bestMove, board.cols()) : bestMove);
+			return best;
+		}
+
+		/**
+		*score the position for the player to move from the threat counters of the board,
+		*kept up to date by every move, so a leaf costs a look at the top of every column.
+		*the score is kept far from a win so big boards can not look like one.
+		*@param side the player to move
+		*@return score for side
+		*/
+		private int evaluate(int side) {
+			return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, board.evaluate(side)));
+		}
+
+		/**
+		*give every move of the ply a score used to search the best ones first.
+		*@param ply the ply of the moves
+		*@param n number of moves
+		*@param side the player to move
+		*@param tableMove best move stored in the table, searched first
+		*/
+		private void scoreMoves(int ply, int n, int side, int tableMove) {
+			int cols=board.cols();
+			int center=cols/2;
+			for (int i=0; i<n; i++) {
+				int move=moves[ply][i];
+				if (move==tableMove) {
+					order[ply][i]=Integer.MAX_VALUE;
+					continue;
+				}
+				order[ply][i]=history[side][historyIndex(move, cols)]*8 + center-Math.abs(Move.col(move)-center);
+			}
+		}
+
+		/**
+		*swap the best scored of the moves i to n-1 into place i and return it.
+		*@param ply the ply of the moves
+		*@param i the first move not searched yet
+		*@param n number of moves
+		*@return the move to search next
+		*/
+		private int pick(int ply, int i, int n) {
+			int[] m=moves[ply];
+			int[] s=order[ply];
+			int best=i;
+			for (int j=i+1; j<n; j++) {
+				if (s[j]>s[best]) {
+					best=j;
+				}
+			}
+			int move=m[best];
+			m[best]=m[i];
+			m[i]=move;
+			int score=s[best];
+			s[best]=s[i];
+			s[i]=score;
+			return move;
+		}
+
+		/**
+		*halve every value of a history table.
+		*@param counts the table of one side
+		*/
+		private void age(int[] counts) {
+			for (int i=0; i<counts.length; i++) {
+				counts[i]>>=1;
+			}
+		}
+
+		/**
+		*get the place of a move in the history table.
+		*@param move the packed move
+		*@param cols number of columns
+		*@return index for the history table
+		*/
+		private int historyIndex(int move, int cols) {
+			return Move.kind(move)*cols+Move.col(move);
+		}
+
+		/**
+		*allocate the per ply buffers for the number of columns, once,
+		*and halve the history of the searches before, so old cutoffs fade.
+		*@param cols number of columns of the game
+		*/
+		void prepare(int cols) {
+			if (board!=null && board.cols()==cols) {
+				age(history[0]);
+				age(history[1]);
+				return;
+			}
+			board=new BitBoard(cols);
+			board.threats(); //counted on every copy and move from now on
+			moves=new int[MAX_PLY+1][];
+			order=new int[MAX_PLY+1][];
+			for (int i=0; i<=MAX_PLY; i++) {
+				moves[i]=new int[16];
+				order[i]=new int[16];
+			}
+			history=new int[2][4*cols];
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		PowerConnectFourAI ai=new PowerConnectFourAI(16);
+
+		//red has three in the bottom row and should finish it
+		PowerConnectFour game=new PowerConnectFour();
+		game.drop(0); game.drop(0);
+		game.drop(1); game.drop(1);
+		game.drop(2); game.drop(2);
+		int move=ai.bestMove(game, 50);
+		Token red=game.currentPlayer();
+		if (Move.apply(game, move) && game.hasFourConnected(red) && ai.lastScore()>=WIN-MAX_PLY) {
+			System.out.println("Yay 1!");
+		}
+
+		//yellow has to stop red from winning on column 3
+		game=new PowerConnectFour();
+		game.drop(0); game.drop(6);
+		game.drop(1); game.drop(6);
+		game.drop(2);
+		move=ai.bestMove(game, 50);
+		Move.apply(game, move);
+		if (ai.bestMove(game, 50)!=Move.NONE && ai.lastScore()<WIN-MAX_PLY) {
+			System.out.println("Yay 2!");
+		}
+
+		//search from the empty board with a budget, the time it took is only printed with the stats
+		//since it depends on the machine
+		game=new PowerConnectFour();
+		move=ai.bestMove(game, 50);
+		if (Move.apply(game, move) && ai.lastDepth()>=4) {
+			System.out.println("Yay 3!");
+		}
+		System.out.println(ai.lastStats());
+
+		//lazy SMP on every core finds the same win and shares the work
+		int cores=Runtime.getRuntime().availableProcessors();
+		PowerConnectFourAI parallel=new PowerConnectFourAI(20, Math.max(2, cores));
+		game=new PowerConnectFour();
+		game.drop(0); game.drop(0);
+		game.drop(1); game.drop(1);
+		game.drop(2); game.drop(2);
+		move=parallel.bestMove(game, 50);
+		if (Move.apply(game, move) && game.hasFourConnected(red) && parallel.lastNodes()>0) {
+			System.out.println("Yay 4!");
+		}
+		parallel.shutdown();
+
+		//the history of a long lived player is aged, it never grows towards overflow
+		int[] counts=ai.searchers[0].history[0];
+		java.util.Arrays.fill(counts, MAX_HISTORY);
+		game=new PowerConnectFour();
+		game.drop(3);
+		ai.bestMove(game, 50);
+		boolean bounded=true;
+		for (int[] side : ai.searchers[0].history) {
+			for (int value : side) {
+				bounded&=value>=0 && value<=MAX_HISTORY;
+			}
+		}
+		if (bounded && counts[0]<MAX_HISTORY) {
+			System.out.println("Yay 5!");
+		}
+
+		//scaling: nodes per second of a middle game position for more and more threads
+		PowerConnectFour middle=new PowerConnectFour();
+		int[] opening={3, 3, 3, 3, 2, 4};
+		for (int col : opening) {
+			middle.drop(col);
+		}
+		long single=0;
+		for (int threads=1; threads<=cores; threads*=2) {
+			PowerConnectFourAI scaled=new PowerConnectFourAI(20, threads);
+			scaled.bestMove(middle, 200); //warm up
+			scaled.bestMove(middle, 500);
+			if (threads==1) {
+				single=scaled.lastNodesPerSecond();
+			}
+			System.out.format("%s, speedup %.2f\n", scaled.lastStats(),
+				(double) scaled.lastNodesPerSecond()/Math.max(1, single));
+			scaled.shutdown();
+		}
+	}
+}
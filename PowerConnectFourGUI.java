@@ -1,6 +1,14 @@
 import java.util.Scanner;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *  A little ASCII GUI to help you interact with the game.
@@ -8,6 +16,8 @@ import java.io.IOException;
  *      java PowerConnectFourGUI 
  *  or 
  * 		java PowerConnectFourGUI Input_File_Name
+ *  or, to replay many files with one summary line each and no prompts,
+ * 		java PowerConnectFourGUI -batch Input_File_Name...
  *  
  *  @author Y Zhong
  */	
@@ -18,6 +28,19 @@ public class PowerConnectFourGUI {
 	 */
 	
 	enum Mode { KEYBOARD, FILE};
+
+	/**
+	 * The summary line of one file of a batch, and whether it could be replayed.
+	 */
+	private static final class Summary {
+		private final String line;
+		private final boolean error;
+
+		private Summary(String line, boolean error){
+			this.line = line;
+			this.error = error;
+		}
+	}
 	 
 	/**
 	 *  The main method that presents the GUI.
@@ -34,8 +57,13 @@ public class PowerConnectFourGUI {
 		String next;
 		boolean validMove = false;
 		
-		if(args.length > 1){
+		if(args.length > 0 && args[0].equals("-batch")){
+			String[] files = java.util.Arrays.copyOfRange(args, 1, args.length);
+			System.exit(batch(files) == 0 ? 0 : 1);
+		}
+		else if(args.length > 1){
 			System.out.println("Usage: java PowerConnectFourGUI [Input_File_Name]");
+			System.out.println("   or: java PowerConnectFourGUI -batch Input_File_Name...");
 			System.exit(0);
 		}
 		else if (args.length == 1){
@@ -152,31 +180,204 @@ public class PowerConnectFourGUI {
 	}
 	
 	/**
-	 * The method that displays the grid of the game.
+	 * The method that replays move files with no prompts and no grids.
+	 * Files are replayed in parallel on every core and one summary line is
+	 * printed for each file, in the order of the files:
+	 *     file: result WIN|QUIT|END|ERROR, winner R|Y|-, moves n, invalid n
 	 *
-	 * @param game the connect four game to be displayed
+	 * @param files the move files, one game each
+	 * @return the number of files that could not be replayed
 	 */
-	public static void displayGrid(PowerConnectFour game){
-		int row = game.sizeRow();
-		int col = game.sizeCol();
-				
-		System.out.format("|   |");
-		for (int j=0; j<col; j++){
-			System.out.format("| %d |", j);
+	public static int batch(String[] files){
+		int threads = Math.max(1, Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "PowerConnectFourGUI batch");
+			t.setDaemon(true);
+			return t;
+		});
+		//every thread replays into its own game, reset for each file
+		ThreadLocal<PowerConnectFour> games = ThreadLocal.withInitial(PowerConnectFour::new);
+		List<Future<Summary>> lines = new ArrayList<>(files.length);
+		for (String file : files)
+			lines.add(pool.submit(() -> summary(file, games.get())));
+		int errors = 0;
+		try {
+			for (Future<Summary> line : lines){
+				Summary summary = line.get();
+				if (summary.error)
+					errors++;
+				System.out.println(summary.line);
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}catch(ExecutionException e) {
+			throw new IllegalStateException("Batch replay failed", e.getCause());
+		}finally{
+			pool.shutdown();
+		}
+		return errors;
+	}
+
+	/**
+	 * The method that replays one move file and describes how it ended.
+	 *
+	 * @param file the move file
+	 * @param game the game to replay into, it is reset first
+	 * @return the summary line of the file, an error if it could not be replayed
+	 */
+	private static Summary summary(String file, PowerConnectFour game){
+		long result;
+		try {
+			result = replay(Files.readAllBytes(Paths.get(file)), game);
+		}catch(IOException | RuntimeException e) {
+			return new Summary(file + ": result ERROR, winner -, moves 0, invalid 0, " + e, true);
 		}
-		System.out.println("");		
-		for (int i=row-1; i>=0; i--){
-			System.out.format("| %d |", i);
-			for (int j=0; j<col; j++){
-				Token cell = game.get(j,i);
-				if (cell == null)
-					System.out.format("| %c |", game.getEmptySymbol());
-				else
-					System.out.format("| %c |", cell.getSymbol());
+		Token winner = GameArchive.winner(result);
+		String end = (winner != null) ? "WIN" : GameArchive.quit(result) ? "QUIT" : "END";
+		return new Summary(file + ": result " + end + ", winner " + (winner == null ? '-' : winner.getSymbol())
+			+ ", moves " + GameArchive.moves(result) + ", invalid " + GameArchive.invalid(result), false);
+	}
+
+	/**
+	 * The method that replays the text of a move file the way main does, without printing.
+	 * Words are separated by white space and the rest of the line after a move is skipped,
+	 * as with the Scanner in main, but the text is read in place.
+	 *
+	 * @param text the bytes of the move file
+	 * @param game the game to replay into, it is reset first
+	 * @return the result, read it with GameArchive.moves, invalid, winner and quit
+	 * @throws NumberFormatException if a column or row is not a number, main would stop there
+	 */
+	public static long replay(byte[] text, PowerConnectFour game){
+		game.reset();
+		int pos = 0;
+		int moves = 0;
+		int invalid = 0;
+		Token player = game.currentPlayer();
+		while (true){
+			pos = skipSpace(text, pos);
+			if (pos == text.length)
+				break;
+			int end = pos;
+			while (end < text.length && !Character.isWhitespace(text[end]))
+				end++;
+			int kind = -1;
+			if (end-pos == 1 && text[pos] == 'D')
+				kind = Move.DROP;
+			else if (end-pos == 1 && text[pos] == 'P')
+				kind = Move.POP;
+			else if (end-pos == 2 && text[pos] == 'P' && text[pos+1] == 'D')
+				kind = Move.POWER_DROP;
+			else if (end-pos == 2 && text[pos] == 'P' && text[pos+1] == 'P')
+				kind = Move.POWER_POP;
+			else if (end-pos == 1 && text[pos] == 'Q')
+				return GameArchive.result(moves+1, invalid, -1, true);
+			pos = end;
+			moves++;
+			if (kind < 0){
+				invalid++; //not a move, only this word is skipped
 			}
-			System.out.println("");
+			else {
+				int col = 0;
+				int row = 0;
+				pos = skipSpace(text, pos);
+				end = wordEnd(text, pos);
+				col = parseInt(text, pos, end);
+				pos = end;
+				if (kind == Move.POWER_DROP || kind == Move.POWER_POP){
+					pos = skipSpace(text, pos);
+					end = wordEnd(text, pos);
+					row = parseInt(text, pos, end);
+					pos = end;
+				}
+				//the rest of the line is skipped
+				while (pos < text.length && text[pos] != '\n' && text[pos] != '\r')
+					pos++;
+				if (!GameArchive.play(game, kind, col, row))
+					invalid++;
+			}
+			if (game.hasFourConnected(player))
+				return GameArchive.result(moves, invalid, player.ordinal(), false);
+			player = game.currentPlayer();
+			if (game.hasFourConnected(player))
+				return GameArchive.result(moves, invalid, player.ordinal(), false);
 		}
+		return GameArchive.result(moves, invalid, -1, false);
+	}
 
+	/**
+	 * The method that skips white space.
+	 *
+	 * @param text the text
+	 * @param pos where to start
+	 * @return the first place that is not white space, or the length of the text
+	 */
+	private static int skipSpace(byte[] text, int pos){
+		while (pos < text.length && Character.isWhitespace(text[pos]))
+			pos++;
+		return pos;
+	}
+
+	/**
+	 * The method that finds the end of a word.
+	 *
+	 * @param text the text
+	 * @param pos the first character of the word
+	 * @return the place after its last character
+	 */
+	private static int wordEnd(byte[] text, int pos){
+		while (pos < text.length && !Character.isWhitespace(text[pos]))
+			pos++;
+		return pos;
+	}
+
+	/**
+	 * The method that reads a whole word as a decimal number, it takes
+	 * the same numbers as Scanner.nextInt, every value an int can hold.
+	 *
+	 * @param text the text
+	 * @param start the first character of the word
+	 * @param end the place after its last character
+	 * @return the number
+	 * @throws NumberFormatException if the word is missing or not a number
+	 */
+	private static int parseInt(byte[] text, int start, int end){
+		if (start == end)
+			throw new NumberFormatException("Missing number at the end of the file");
+		int i = start;
+		boolean negative = text[i] == '-';
+		if (text[i] == '-' || text[i] == '+')
+			i++;
+		if (i == end || end-i > 10)
+			throw new NumberFormatException("Not a number: " + new String(text, start, end-start));
+		long value = 0;
+		for (; i < end; i++){
+			int digit = text[i]-'0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("Not a number: " + new String(text, start, end-start));
+			value = value*10+digit;
+		}
+		if (negative)
+			value = -value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new NumberFormatException("Not a number: " + new String(text, start, end-start));
+		return (int) value;
+	}
+
+	/**
+	 * The renderer of displayGrid, it builds each frame in one buffer and writes it once.
+	 */
+	private static final GridRenderer DISPLAY = new GridRenderer(false);
+
+	/**
+	 * The method that displays the grid of the game.
+	 *
+	 * @param game the connect four game to be displayed
+	 */
+	public static void displayGrid(PowerConnectFour game){
+		synchronized (DISPLAY){
+			DISPLAY.render(game);
+		}
 	}
 	
 	/**
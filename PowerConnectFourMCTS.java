@@ -0,0 +1,618 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** a Monte Carlo Tree Search player for Power Connect Four.
+ * the tree grows with UCT selection and every new leaf is scored by a random
+ * playout, so the large number of power moves costs memory, not depth.
+ * nodes live in fixed size arrays and playouts run on a reused bitboard, checking
+ * only the lines through the column a move changed, so nothing is allocated while
+ * searching. the tree below the move that was played is kept for the next search,
+ * and with more then one thread every thread grows its own tree (root parallel)
+ * and the visits of the root moves are added up at the end.
+ * @author Fatemah Bahzad
+ */
+
+public class PowerConnectFourMCTS {
+
+	/**
+	 * default number of tree nodes, as a power of two.
+	 */
+	private static final int DEFAULT_NODE_BITS = 20;
+
+	/**
+	 * exploration constant of UCT.
+	 */
+	private static final double EXPLORATION = 1.4;
+
+	/**
+	 * a playout longer then this is a draw.
+	 */
+	private static final int MAX_PLAYOUT = 200;
+
+	/**
+	 * how many playouts to run between two looks at the clock.
+	 */
+	private static final int CLOCK_PLAYOUTS = 63;
+
+	/**
+	 * result of a node: not decided, the player who moved into it won, or lost.
+	 */
+	private static final byte OPEN = 0;
+	private static final byte WON = 1;
+	private static final byte LOST = 2;
+
+	/**
+	 * one tree per thread, tree 0 runs on the calling thread.
+	 */
+	private final Tree[] trees;
+	/**
+	 * runs the other trees, created on the first parallel search.
+	 */
+	private ExecutorService pool;
+
+	/**
+	 * when the current search has to stop.
+	 */
+	private volatile long deadline;
+
+	/**
+	 * statistics of the last search.
+	 */
+	private long lastPlayouts;
+	private long lastNanos;
+	private int lastReused;
+
+	/**
+	*create a single thread player with the default number of nodes.
+	*/
+	public PowerConnectFourMCTS() {
+		this(DEFAULT_NODE_BITS, 1);
+	}
+
+	/**
+	*create a player with 2^nodeBits nodes per tree and one tree per thread.
+	*@param nodeBits log2 of the number of nodes of every tree
+	*@param threads number of threads, 1 or more
+	*/
+	public PowerConnectFourMCTS(int nodeBits, int threads) {
+		if (nodeBits<4 || nodeBits>26) {
+			throw new IllegalArgumentException("Node bits must be between 4 and 26");
+		}
+		if (threads<1) {
+			throw new IllegalArgumentException("Threads must be positive");
+		}
+		trees=new Tree[threads];
+		for (int i=0; i<threads; i++) {
+			trees[i]=new Tree(1<<nodeBits, 0x9E3779B97F4A7C15L*(i+1));
+		}
+	}
+
+	/**
+	*search the game for the best move of the current player.
+	*@param game the game to search, it is not changed
+	*@param timeBudget milliseconds the search can take
+	*@return the move with the most visits, packed as in Move
+	*/
+	public int bestMove(PowerConnectFour game, long timeBudget) {
+		long start=System.nanoTime();
+		deadline=start+timeBudget*1000000L;
+		int side=game.currentPlayer().ordinal();
+		lastReused=0;
+		for (Tree tree : trees) {
+			lastReused+=tree.setRoot(game, side);
+		}
+
+		Future<?>[] others=new Future<?>[trees.length-1];
+		for (int i=1; i<trees.length; i++) {
+			Tree tree=trees[i];
+			others[i-1]=pool().submit(tree::search);
+		}
+		trees[0].search();
+		for (Future<?> other : others) {
+			try {
+				other.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException("Tree search failed", e.getCause());
+			}
+		}
+
+		//add up the visits of every root move over the trees
+		Tree first=trees[0];
+		int best=Move.NONE;
+		long bestVisits=-1;
+		for (int c=first.first[first.root]; c<first.first[first.root]+first.count[first.root]; c++) {
+			int move=first.move[c];
+			long visits=0;
+			for (Tree tree : trees) {
+				visits+=tree.visitsOf(move);
+			}
+			if (first.result[c]==WON) {
+				visits=Long.MAX_VALUE; //a move that wins at once is always played
+			}
+			if (visits>bestVisits) {
+				bestVisits=visits;
+				best=move;
+			}
+		}
+		lastPlayouts=0;
+		for (Tree tree : trees) {
+			lastPlayouts+=tree.playouts;
+		}
+		lastNanos=System.nanoTime()-start;
+		return best;
+	}
+
+	/**
+	*get the number of playouts of the last search, by every thread.
+	*@return number of playouts
+	*/
+	public long lastPlayouts() {
+		return lastPlayouts;
+	}
+
+	/**
+	*get how fast the last search went, by every thread together.
+	*@return playouts per second
+	*/
+	public long lastPlayoutsPerSecond() {
+		return (lastNanos==0) ? 0 : lastPlayouts*1000000000L/lastNanos;
+	}
+
+	/**
+	*get the statistics of the last search on one line.
+	*@return threads, playouts, speed and reused visits of the last search
+	*/
+	public String lastStats() {
+		return "threads " + trees.length + ", " + lastPlayouts + " playouts in " + lastNanos/1000000L
+			+ " ms, " + lastPlayoutsPerSecond() + " playouts/s, " + lastReused + " visits reused";
+	}
+
+	/**
+	*stop the helper threads, the player can still search on the calling thread after this.
+	*/
+	public void shutdown() {
+		if (pool!=null) {
+			pool.shutdown();
+			pool=null;
+		}
+	}
+
+	/**
+	*get the pool running the other trees, its threads do not keep the program alive.
+	*@return the pool
+	*/
+	private ExecutorService pool() {
+		if (pool==null) {
+			pool=Executors.newFixedThreadPool(trees.length-1, r -> {
+				Thread t=new Thread(r, "PowerConnectFourMCTS helper");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+
+	/** one search tree with the board and buffers of the thread growing it.
+	 * the nodes are kept in parallel arrays, the children of a node are next to each other.
+	 */
+	private final class Tree {
+
+		/**
+		 * the nodes: move leading to the node, first child, number of children
+		 * (-1 before the node is expanded), visits, wins of the player who made
+		 * the move (draws count one half) and the result when the move ends the game.
+		 */
+		private final int[] move;
+		private final int[] first;
+		private final int[] count;
+		private final int[] visits;
+		private final double[] wins;
+		private final byte[] result;
+		private int size;
+		private int root;
+
+		/**
+		 * the position of the root and the player to move there.
+		 */
+		private BitBoard rootBoard;
+		private int rootSide;
+		/**
+		 * the board a playout is made on, it keeps no hashes while searching and every
+		 * playout takes its moves back, so it is the root position between playouts.
+		 */
+		private BitBoard board;
+		/**
+		 * nodes from the root to the leaf of the current playout.
+		 */
+		private final int[] path=new int[MAX_PLAYOUT+2];
+		/**
+		 * moves of the current playout, the root player made the even ones.
+		 */
+		private final int[] played=new int[MAX_PLAYOUT+2];
+		private int plies;
+		/**
+		 * legal moves of the current playout position.
+		 */
+		private int[] buffer=new int[64];
+		/**
+		 * number of distinct legal moves in every column, for the random playout moves.
+		 */
+		private int[] columnMoves=new int[0];
+		/**
+		 * xorshift state, every tree has its own.
+		 */
+		private long random;
+		private long playouts;
+
+		/**
+		*create an empty tree.
+		*@param capacity number of nodes
+		*@param seed seed of the random moves
+		*/
+		Tree(int capacity, long seed) {
+			move=new int[capacity];
+			first=new int[capacity];
+			count=new int[capacity];
+			visits=new int[capacity];
+			wins=new double[capacity];
+			result=new byte[capacity];
+			random=seed;
+		}
+
+		/**
+		*move the root to the game position, keeping the subtree if the game went
+		*through one or two moves of the old root.
+		*@param game the game to search
+		*@param side the player to move
+		*@return visits kept from the last search
+		*/
+		int setRoot(PowerConnectFour game, int side) {
+			if (rootBoard==null || rootBoard.cols()!=game.sizeCol()) {
+				rootBoard=new BitBoard(game.sizeCol());
+				board=new BitBoard(game.sizeCol());
+				columnMoves=new int[game.sizeCol()];
+				size=0;
+			}
+			int kept=(size>0 && size<move.length*3/4) ? find(game.positionHash()) : -1;
+			game.copyGrid(rootBoard);
+			rootSide=side;
+			if (kept<0) {
+				size=1;
+				root=0;
+				clear(0, Move.NONE);
+				return 0;
+			}
+			root=kept;
+			return visits[kept];
+		}
+
+		/**
+		*find the node one or two moves below the root with the given position.
+		*@param hash hash of the position with the player to move
+		*@return the node or -1
+		*/
+		private int find(long hash) {
+			if (rootBoard.hash(rootSide)==hash) {
+				return root;
+			}
+			board.hashing(true);
+			board.copyFrom(rootBoard);
+			for (int c=first[root]; count[root]>0 && c<first[root]+count[root]; c++) {
+				board.play(move[c], rootSide);
+				if (board.hash(1-rootSide)==hash) {
+					return c;
+				}
+				for (int g=first[c]; count[c]>0 && g<first[c]+count[c]; g++) {
+					board.play(move[g], 1-rootSide);
+					boolean same=board.hash(rootSide)==hash;
+					board.undo(move[g], 1-rootSide);
+					if (same) {
+						return g;
+					}
+				}
+				board.undo(move[c], rootSide);
+			}
+			return -1;
+		}
+
+		/**
+		*run playouts until the deadline.
+		*/
+		void search() {
+			playouts=0;
+			board.hashing(false); //playouts never look at a hash
+			board.copyFrom(rootBoard);
+			do {
+				for (int i=0; i<=CLOCK_PLAYOUTS; i++) {
+					iterate();
+				}
+			} while (System.nanoTime()<deadline);
+		}
+
+		/**
+		*get the visits of the root move.
+		*@param m the move packed as in Move
+		*@return visits or 0 if the move is not a child of the root
+		*/
+		long visitsOf(int m) {
+			for (int c=first[root]; count[root]>0 && c<first[root]+count[root]; c++) {
+				if (move[c]==m) {
+					return visits[c];
+				}
+			}
+			return 0;
+		}
+
+		/**
+		*select a leaf with UCT, expand it, run a playout and back the result up.
+		*/
+		private void iterate() {
+			plies=0;
+			int side=rootSide;
+			int node=root;
+			int length=0;
+			path[length++]=node;
+			int winner=-1;
+			//go down the tree
+			while (count[node]>0 && result[node]==OPEN && length<MAX_PLAYOUT) {
+				node=select(node);
+				path[length++]=node;
+				winner=playChecked(move[node], side);
+				side=1-side;
+				if (winner>=0) {
+					break;
+				}
+			}
+			if (result[node]!=OPEN) {
+				winner=(result[node]==WON) ? 1-side : side; //side is the player after the mover
+			}
+			else if (winner<0) {
+				//expand the leaf once it was visited, then play one of its children
+				if (count[node]<0 && visits[node]>0 || node==root && count[node]<0) {
+					expand(node, side);
+				}
+				if (count[node]>0) {
+					node=first[node]+(int) (next()>>>33)%count[node];
+					path[length++]=node;
+					winner=playChecked(move[node], side);
+					side=1-side;
+					if (winner>=0) {
+						result[node]=(winner==1-side) ? WON : LOST;
+					}
+				}
+				if (winner<0) {
+					winner=playout(side, length);
+				}
+			}
+			else {
+				result[node]=(winner==1-side) ? WON : LOST;
+			}
+			//back up, every node scores for the player who moved into it
+			int mover=1-rootSide; //the root was reached by the other player
+			for (int i=0; i<length; i++) {
+				int n=path[i];
+				visits[n]++;
+				wins[n]+=(winner<0) ? 0.5 : (winner==mover) ? 1.0 : 0.0;
+				mover=1-mover;
+			}
+			//back to the root position
+			for (int i=plies-1; i>=0; i--) {
+				board.undo(played[i], ((i&1)==0) ? rootSide : 1-rootSide);
+			}
+			playouts++;
+		}
+
+		/**
+		*pick the child with the best UCT value, unvisited children first.
+		*@param node the parent
+		*@return the child
+		*/
+		private int select(int node) {
+			double logVisits=Math.log(visits[node]+1);
+			int best=first[node];
+			double bestValue=-1;
+			for (int c=first[node]; c<first[node]+count[node]; c++) {
+				if (visits[c]==0) {
+					return c;
+				}
+				double value=wins[c]/visits[c]+EXPLORATION*Math.sqrt(logVisits/visits[c]);
+				if (value>bestValue) {
+					bestValue=value;
+					best=c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		*add the legal moves of the position as children of the node, if the tree has room.
+		*@param node the leaf to expand
+		*@param side the player to move at the leaf
+		*/
+		private void expand(int node, int side) {
+			int n=moves(side);
+			if (size+n>move.length) {
+				return; //the tree is full, the leaf is only played out
+			}
+			first[node]=size;
+			count[node]=n;
+			for (int i=0; i<n; i++) {
+				clear(size++, buffer[i]);
+			}
+		}
+
+		/**
+		*play random moves until someone connects four or the playout is too long.
+		*@param side the player to move
+		*@param length plies already played from the root
+		*@return the winner or -1 for a draw
+		*/
+		private int playout(int side, int length) {
+			for (int ply=length; ply<MAX_PLAYOUT; ply++) {
+				int winner=playChecked(randomMove(side), side);
+				if (winner>=0) {
+					return winner;
+				}
+				side=1-side;
+			}
+			return -1;
+		}
+
+		/**
+		*make the move and check the lines through its column, the mover first.
+		*a drop only adds a token of the mover, so only moves that shift tokens check the other player.
+		*@param m the move
+		*@param side the player making it
+		*@return the player who connected four, or -1
+		*/
+		private int playChecked(int m, int side) {
+			int from=board.play(m, side);
+			played[plies++]=m;
+			if (board.hasFourConnected(side, Move.col(m), from)) {
+				return side;
+			}
+			if (Move.kind(m)!=Move.DROP && board.hasFourConnected(1-side, Move.col(m), from)) {
+				return 1-side;
+			}
+			return -1;
+		}
+
+		/**
+		*pick one of the distinct legal moves at random, all of them equally likely,
+		*without listing them: a column has a drop, a power drop below every token
+		*and a pop or power pop for every token of the side.
+		*@param side the player to move
+		*@return the move
+		*/
+		private int randomMove(int side) {
+			int cols=board.cols();
+			int total=0;
+			for (int i=0; i<cols; i++) {
+				columnMoves[i]=1+board.height(i)+board.count(side, i);
+				total+=columnMoves[i];
+			}
+			int r=(int) ((next()>>>33)%total);
+			int col=0;
+			while (r>=columnMoves[col]) {
+				r-=columnMoves[col++];
+			}
+			int h=board.height(col);
+			if (r==0) {
+				return Move.of(Move.DROP, col, 0);
+			}
+			if (r<=h) {
+				return Move.of(Move.POWER_DROP, col, r-1);
+			}
+			r-=h+1; //the r-th token of the side from the bottom
+			for (int w=0; ; w++) {
+				long own=board.word(side, col, w);
+				int c=Long.bitCount(own);
+				if (r<c) {
+					while (r-->0) {
+						own&=own-1;
+					}
+					int row=(w<<6)+Long.numberOfTrailingZeros(own);
+					return (row==0) ? Move.of(Move.POP, col, 0) : Move.of(Move.POWER_POP, col, row);
+				}
+				r-=c;
+			}
+		}
+
+		/**
+		*list the distinct legal moves of the playout board into the buffer.
+		*@param side the player to move
+		*@return number of moves
+		*/
+		private int moves(int side) {
+			int needed=MoveGenerator.maxMoves(board);
+			if (buffer.length<needed) {
+				buffer=new int[needed*2]; //grows with the board, then it is reused
+			}
+			return MoveGenerator.generate(board, side, buffer, true);
+		}
+
+		/**
+		*reset a node.
+		*@param n the node
+		*@param m the move leading to it
+		*/
+		private void clear(int n, int m) {
+			move[n]=m;
+			first[n]=0;
+			count[n]=-1;
+			visits[n]=0;
+			wins[n]=0;
+			result[n]=OPEN;
+		}
+
+		/**
+		*get the next random number (xorshift64).
+		*@return random long
+		*/
+		private long next() {
+			random^=random<<13;
+			random^=random>>>7;
+			random^=random<<17;
+			return random;
+		}
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		PowerConnectFourMCTS mcts=new PowerConnectFourMCTS(18, 1);
+
+		//red has three in the bottom row and should finish it
+		PowerConnectFour game=new PowerConnectFour();
+		game.drop(0); game.drop(0);
+		game.drop(1); game.drop(1);
+		game.drop(2); game.drop(2);
+		Token red=game.currentPlayer();
+		int move=mcts.bestMove(game, 100);
+		if (Move.apply(game, move) && game.hasFourConnected(red)) {
+			System.out.println("Yay 1!");
+		}
+
+		//play a game against the alpha-beta player, the tree is kept between moves
+		game=new PowerConnectFour();
+		PowerConnectFourAI ai=new PowerConnectFourAI(18);
+		boolean legal=true;
+		int reused=0;
+		for (int ply=0; ply<40 && legal; ply++) {
+			if (game.currentPlayer()==Token.RED) {
+				legal=Move.apply(game, mcts.bestMove(game, 50));
+				reused+=mcts.lastReused;
+			}
+			else {
+				legal=Move.apply(game, ai.bestMove(game, 10));
+			}
+			if (game.hasFourConnected(Token.RED) || game.hasFourConnected(Token.YELLOW)) {
+				break;
+			}
+		}
+		if (legal && reused>0) {
+			System.out.println("Yay 2!");
+		}
+
+		//root parallel search on every core
+		int cores=Runtime.getRuntime().availableProcessors();
+		PowerConnectFourMCTS parallel=new PowerConnectFourMCTS(18, Math.max(2, cores));
+		game=new PowerConnectFour();
+		if (Move.apply(game, parallel.bestMove(game, 200))) {
+			System.out.println("Yay 3!");
+		}
+		System.out.println(parallel.lastStats());
+		parallel.shutdown();
+	}
+}
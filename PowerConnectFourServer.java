@@ -0,0 +1,470 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** a TCP server hosting one Power Connect Four game for every connection.
+ * a client sends the moves PowerConnectFourGUI reads, one per line: "D 5",
+ * "P 2", "PD 3 0", "PP 3 1" or "Q". every answer ends with one line that
+ * starts with TURN, WINNER, BYE or ERROR:
+ * <pre>
+ *   VALID or INVALID   after a move
+ *   the grid           as displayGrid draws it
+ *   TURN R             the next player, or WINNER Y and the connection is closed
+ * </pre>
+ * a new connection gets the empty grid and TURN R, Q gets BYE, and a line that
+ * can not be read gets ERROR with the reason and changes nothing. a line longer
+ * than MAX_LINE characters is skipped up to its end and gets ERROR too, so a client
+ * can not make the server keep a line of any length. a line of the client ends
+ * with \n, a \r before it is ignored, and every line the server sends ends with
+ * \n, whatever the platform.
+ * every connection runs on its own virtual thread when the Java running the
+ * server has them, and on a daemon thread with a small stack when it does not.
+ * @author Fatemah Bahzad
+ */
+
+public class PowerConnectFourServer implements AutoCloseable {
+
+	/**
+	 * stack of a connection thread when there are no virtual threads.
+	 */
+	private static final long STACK_SIZE = 256*1024;
+
+	/**
+	 * longest line read from a client, a move needs less than 30 characters.
+	 */
+	private static final int MAX_LINE = 256;
+
+	/**
+	 * wait after a failed accept in milliseconds, doubled while it keeps failing up to the most.
+	 */
+	private static final long FIRST_BACKOFF = 10;
+	private static final long MAX_BACKOFF = 1000;
+
+	private final ServerSocket server;
+	private final ExecutorService connections;
+	private final boolean virtual;
+	private final Thread acceptor;
+	/**
+	 * open connections, closed with the server.
+	 */
+	private final Set<Socket> sockets=ConcurrentHashMap.newKeySet();
+	private final AtomicInteger sessions=new AtomicInteger();
+	private final AtomicInteger peak=new AtomicInteger();
+
+	/**
+	*start a server on localhost.
+	*@param port the port, 0 for any free port
+	*@throws IOException if the port can not be used
+	*/
+	public PowerConnectFourServer(int port) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	*start a server.
+	*@param address where to listen
+	*@throws IOException if the address can not be used
+	*/
+	public PowerConnectFourServer(InetSocketAddress address) throws IOException {
+		server=new ServerSocket();
+		server.setReuseAddress(true);
+		server.bind(address, 1024);
+		ExecutorService executor=virtualExecutor();
+		virtual=executor!=null;
+		connections=virtual ? executor : Executors.newCachedThreadPool(r -> {
+			Thread t=new Thread(null, r, "PowerConnectFourServer session", STACK_SIZE);
+			t.setDaemon(true);
+			return t;
+		});
+		acceptor=new Thread(this::accept, "PowerConnectFourServer accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	*get the port the server listens on.
+	*@return the port
+	*/
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	/**
+	*get the number of games being played.
+	*@return open sessions
+	*/
+	public int sessions() {
+		return sessions.get();
+	}
+
+	/**
+	*get the most games that were played at once.
+	*@return most open sessions
+	*/
+	public int peakSessions() {
+		return peak.get();
+	}
+
+	/**
+	*check whether connections run on virtual threads.
+	*@return true if they do
+	*/
+	public boolean virtualThreads() {
+		return virtual;
+	}
+
+	/**
+	*stop listening and close every connection.
+	*@throws IOException if the server socket can not be closed
+	*/
+	@Override
+	public void close() throws IOException {
+		server.close();
+		acceptor.interrupt(); //it may be waiting after a failed accept
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				//it is closed anyway
+			}
+		}
+		connections.shutdown();
+	}
+
+	/**
+	*get a virtual thread per task executor, if this Java has them.
+	*@return the executor or null
+	*/
+	private static ExecutorService virtualExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null; //before Java 21, or preview features are off
+		}
+	}
+
+	/**
+	*accept connections until the server is closed.
+	*when accept keeps failing while the server is open, for example when the process
+	*has no file descriptors left, the failure is reported once and the thread waits
+	*longer and longer before it tries again, instead of spinning.
+	*/
+	private void accept() {
+		long backoff=0;
+		while (!server.isClosed()) {
+			Socket socket;
+			try {
+				socket=server.accept();
+			}
+			catch (IOException e) {
+				if (server.isClosed()) {
+					return;
+				}
+				if (backoff==0) {
+					System.err.println("PowerConnectFourServer: can not accept connections, trying again: " + e);
+				}
+				backoff=Math.min(Math.max(2*backoff, FIRST_BACKOFF), MAX_BACKOFF);
+				try {
+					Thread.sleep(backoff);
+				}
+				catch (InterruptedException stop) {
+					return; //closed while waiting
+				}
+				continue;
+			}
+			if (backoff!=0) {
+				System.err.println("PowerConnectFourServer: accepting connections again");
+				backoff=0;
+			}
+			try {
+				socket.setTcpNoDelay(true);
+			}
+			catch (IOException e) {
+				try {
+					socket.close(); //the client went away already
+				}
+				catch (IOException closing) {
+					//it is closed anyway
+				}
+				continue;
+			}
+			sockets.add(socket);
+			connections.execute(() -> serve(socket));
+		}
+	}
+
+	/**
+	*play one game with a client.
+	*@param socket the connection
+	*/
+	private void serve(Socket socket) {
+		int open=sessions.incrementAndGet();
+		peak.accumulateAndGet(open, Math::max);
+		try (socket;
+			InputStream in=new BufferedInputStream(socket.getInputStream());
+			OutputStream out=new BufferedOutputStream(socket.getOutputStream())) {
+			PrintWriter text=new PrintWriter(out, false, StandardCharsets.US_ASCII);
+			PowerConnectFour game=new PowerConnectFour();
+			GridRenderer renderer=new GridRenderer(out, false, "\n");
+			renderer.render(game);
+			send(text, "TURN " + game.currentPlayer().getSymbol());
+			byte[] line=new byte[MAX_LINE];
+			int length;
+			while ((length=readLine(in, line))>=0) {
+				if (length>MAX_LINE) {
+					send(text, "ERROR Line longer than " + MAX_LINE + " characters");
+					continue;
+				}
+				String[] words=new String(line, 0, length, StandardCharsets.US_ASCII).trim().split("\\s+");
+				if (words[0].isEmpty()) {
+					continue;
+				}
+				if (words[0].equals("Q")) {
+					send(text, "BYE");
+					return;
+				}
+				Token player=game.currentPlayer();
+				boolean valid;
+				try {
+					valid=move(game, words);
+				}
+				catch (NumberFormatException e) {
+					send(text, "ERROR " + e.getMessage());
+					continue;
+				}
+				send(text, valid ? "VALID" : "INVALID");
+				renderer.render(game);
+				//the player who moved is checked first, as in the game
+				Token winner=game.hasFourConnected(player) ? player
+					: game.hasFourConnected(game.currentPlayer()) ? game.currentPlayer() : null;
+				if (winner!=null) {
+					send(text, "WINNER " + winner.getSymbol());
+					return;
+				}
+				send(text, "TURN " + game.currentPlayer().getSymbol());
+			}
+		}
+		catch (IOException e) {
+			//the client went away
+		}
+		finally {
+			sockets.remove(socket);
+			sessions.decrementAndGet();
+		}
+	}
+
+	/**
+	*read one line of a client without its end, a line too long is read to its end but not kept.
+	*@param in the connection
+	*@param line where the characters are kept
+	*@return the length of the line, line.length+1 if it was longer, or -1 at the end of the input
+	*@throws IOException if the connection can not be read
+	*/
+	private static int readLine(InputStream in, byte[] line) throws IOException {
+		int length=0;
+		int b;
+		while ((b=in.read())>=0 && b!='\n') {
+			if (length<line.length) {
+				line[length]=(byte) b;
+			}
+			if (length<=line.length) {
+				length++;
+			}
+		}
+		return (b<0 && length==0) ? -1 : length;
+	}
+
+	/**
+	*send one line to the client, ended with \n whatever the platform.
+	*@param text the connection
+	*@param line the line
+	*/
+	private static void send(PrintWriter text, String line) {
+		text.print(line);
+		text.print('\n');
+		text.flush();
+	}
+
+	/**
+	*make a move written as in PowerConnectFourGUI.
+	*@param game the game
+	*@param words the words of the line
+	*@return true if it was a valid move, false if it was not or is no move
+	*@throws NumberFormatException if a column or row is missing or not a number
+	*/
+	private static boolean move(PowerConnectFour game, String[] words) {
+		switch (words[0]) {
+			case "D":
+				return game.drop(number(words, 1));
+			case "P":
+				return game.pop(number(words, 1));
+			case "PD":
+				return game.powerDrop(number(words, 1), number(words, 2));
+			case "PP":
+				return game.powerPop(number(words, 1), number(words, 2));
+			default:
+				return false;
+		}
+	}
+
+	/**
+	*read a number of a line.
+	*@param words the words of the line
+	*@param index which word
+	*@return the number
+	*@throws NumberFormatException if the word is missing or not a number
+	*/
+	private static int number(String[] words, int index) {
+		if (index>=words.length) {
+			throw new NumberFormatException(words[0] + " needs " + ((words[0].length()==1) ? "a column" : "a column and a row"));
+		}
+		return Integer.parseInt(words[index]);
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*run a server on the given port, or the test cases with no arguments.
+	*@param args the port
+	*@throws Exception if a test fails to connect
+	*/
+	public static void main(String[] args) throws Exception {
+		if (args.length==1) {
+			PowerConnectFourServer server=new PowerConnectFourServer(Integer.parseInt(args[0]));
+			System.out.println("Serving on port " + server.port() + (server.virtualThreads() ? " with virtual threads" : ""));
+			Thread.currentThread().join(); //until the process is stopped
+		}
+
+		try (PowerConnectFourServer server=new PowerConnectFourServer(0)) {
+			try (Socket socket=new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+				BufferedReader in=new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+				PrintWriter out=new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+				List<String> start=answer(in);
+				out.println("D 3");
+				List<String> drop=answer(in);
+				if (start.get(start.size()-1).equals("TURN R") && drop.get(0).equals("VALID")
+					&& drop.get(drop.size()-2).equals("| 0 || - || - || - || R || - || - || - |")
+					&& drop.get(drop.size()-1).equals("TURN Y")) {
+					System.out.println("Yay 1!");
+				}
+
+				out.println("P 3");
+				List<String> pop=answer(in);
+				out.println("PD x 1");
+				List<String> bad=answer(in);
+				out.println("Q");
+				List<String> bye=answer(in);
+				if (pop.get(0).equals("INVALID") && pop.get(pop.size()-1).equals("TURN Y")
+					&& bad.size()==1 && bad.get(0).startsWith("ERROR") && bye.get(0).equals("BYE")
+					&& in.readLine()==null) {
+					System.out.println("Yay 2!");
+				}
+			}
+
+			//a line too long is refused and the game goes on, the answers end with \n only
+			try (Socket socket=new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+				InputStream in=socket.getInputStream();
+				OutputStream out=socket.getOutputStream();
+				byte[] tooLong=new byte[100000];
+				java.util.Arrays.fill(tooLong, (byte) ' ');
+				tooLong[0]='D';
+				tooLong[tooLong.length-1]='\n';
+				out.write(tooLong);
+				out.write("D 3\r\n".getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+				StringBuilder answers=new StringBuilder();
+				int b;
+				while (answers.indexOf("TURN Y\n")<0 && (b=in.read())>=0) {
+					answers.append((char) b);
+				}
+				String text=answers.toString();
+				int turn=text.indexOf("TURN R\n");
+				int error=text.indexOf("ERROR Line longer than " + MAX_LINE + " characters\n");
+				int valid=text.indexOf("VALID\n");
+				if (turn>0 && error>turn && valid>error && text.indexOf('\r')<0) {
+					System.out.println("Yay 3!");
+				}
+			}
+
+			//many games at once, red wins every one of them
+			int games=500;
+			AtomicInteger wins=new AtomicInteger();
+			CountDownLatch connected=new CountDownLatch(games);
+			List<Thread> clients=new ArrayList<>();
+			for (int g=0; g<games; g++) {
+				Thread client=new Thread(null, () -> {
+					try (Socket socket=new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+						BufferedReader in=new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+						PrintWriter out=new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+						answer(in);
+						connected.countDown();
+						connected.await(); //every game is open before the moves
+						String last=null;
+						for (String move : new String[] {"D 0", "D 1", "D 0", "D 1", "D 0", "D 1", "D 0"}) {
+							out.println(move);
+							List<String> lines=answer(in);
+							last=lines.get(lines.size()-1);
+						}
+						if ("WINNER R".equals(last)) {
+							wins.incrementAndGet();
+						}
+					}
+					catch (IOException | InterruptedException e) {
+						e.printStackTrace();
+					}
+				}, "client", STACK_SIZE);
+				client.start();
+				clients.add(client);
+			}
+			for (Thread client : clients) {
+				client.join(TimeUnit.SECONDS.toMillis(60));
+			}
+			if (wins.get()==games && server.peakSessions()==games) {
+				System.out.println("Yay 4!");
+			}
+		}
+	}
+
+	/**
+	*read the lines of one answer of the server.
+	*@param in the connection
+	*@return the lines, the last one starts with TURN, WINNER, BYE or ERROR
+	*@throws IOException if the connection is closed before the answer ends
+	*/
+	private static List<String> answer(BufferedReader in) throws IOException {
+		List<String> lines=new ArrayList<>();
+		while (true) {
+			String line=in.readLine();
+			if (line==null) {
+				throw new SocketException("Connection closed in the middle of an answer");
+			}
+			lines.add(line);
+			if (line.startsWith("TURN") || line.startsWith("WINNER") || line.startsWith("BYE") || line.startsWith("ERROR")) {
+				return lines;
+			}
+		}
+	}
+}
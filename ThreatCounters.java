@@ -0,0 +1,374 @@
+/** counts of the red and yellow tokens in every line of winLength cells of a bitboard.
+ * the board tells the counters about every token that comes, goes or changes
+ * side, and every line through that cell is updated, so the totals below are
+ * always ready: a search leaf reads them in O(1) instead of scanning every line.
+ * a line only one side has tokens in is open for that side and scores
+ * weight(tokens), an open line missing one token is an open three.
+ * a line keeps red+yellow*(winLength+1), so what it gives to the totals is
+ * looked up in small tables. rows have no top, the count arrays grow with the columns.
+ * @author Fatemah Bahzad
+ */
+
+public class ThreatCounters {
+
+	/**
+	 * column and row step of the four directions: vertical, horizontal,
+	 * minor diagonal going up to the right, major diagonal going down to the right.
+	 */
+	private static final int[] DC = {0, 1, 1, 1};
+	private static final int[] DR = {1, 0, 1, -1};
+
+	/**
+	 * the heaviest weight of a line, so the scores of big boards stay far from a win.
+	 */
+	private static final int MAX_WEIGHT_BITS = 12;
+
+	/**
+	 * the longest line that can be counted, the tables have (winLength+1)^2 entries.
+	 */
+	public static final int MAX_WIN_LENGTH = 255;
+
+	/**
+	 * the board counted, its heights tell which cells can be played.
+	 */
+	private final BitBoard board;
+	private final int cols;
+	private final int winLength;
+	/**
+	 * the count of a line holding one yellow token, a red token counts one.
+	 */
+	private final int yellowOne;
+	/**
+	 * counts[d][c][r] counts the tokens of the line starting at column c and row r in direction d.
+	 */
+	private final int[][][] counts;
+	/**
+	 * weight[k] is the score of an open line holding k tokens.
+	 */
+	private final int[] weight;
+	/**
+	 * by count of a line: its weight for red minus its weight for yellow,
+	 * and 1 when it is an open three of red, or of yellow.
+	 */
+	private final int[] value;
+	private final int[] redThree;
+	private final int[] yellowThree;
+	/**
+	 * sum of the values of every line, red open lines against yellow ones.
+	 * a wide board or a tall tower has more lines then an int of weights can hold.
+	 */
+	private long balance;
+	/**
+	 * open threes of red and of yellow.
+	 */
+	private int redThrees;
+	private int yellowThrees;
+
+	/**
+	 * create the counters of a board and count the tokens already there.
+	 * @param board the board, it has to call the counters for every change from now on
+	 */
+	ThreatCounters(BitBoard board) {
+		this.board=board;
+		this.cols=board.cols();
+		this.winLength=board.winLength();
+		if (winLength>MAX_WIN_LENGTH) {
+			throw new IllegalArgumentException("Win length " + winLength + " is too long to count");
+		}
+		yellowOne=winLength+1;
+		counts=new int[4][cols][8];
+		weight=new int[winLength+1];
+		for (int k=1; k<=winLength; k++) {
+			weight[k]=1<<Math.min(2*(k-1), MAX_WEIGHT_BITS);
+		}
+		value=new int[yellowOne*yellowOne];
+		redThree=new int[yellowOne*yellowOne];
+		yellowThree=new int[yellowOne*yellowOne];
+		for (int red=0; red<=winLength; red++) {
+			for (int yellow=0; red+yellow<=winLength; yellow++) {
+				int count=red+yellow*yellowOne;
+				if (yellow==0) {
+					value[count]=weight[red];
+					redThree[count]=(red==winLength-1) ? 1 : 0;
+				}
+				else if (red==0) {
+					value[count]=-weight[yellow];
+					yellowThree[count]=(yellow==winLength-1) ? 1 : 0;
+				}
+			}
+		}
+		rebuild();
+	}
+
+	/**
+	 * get the win length the counters were made for.
+	 * @return winLength
+	 */
+	int winLength() {
+		return winLength;
+	}
+
+	/**
+	 * count every token of the board again, after it was copied or loaded.
+	 */
+	void rebuild() {
+		for (int[][] direction : counts) {
+			for (int[] line : direction) {
+				java.util.Arrays.fill(line, 0);
+			}
+		}
+		balance=0;
+		redThrees=0;
+		yellowThrees=0;
+		for (int i=0; i<cols; i++) {
+			for (int r=0; r<board.height(i); r++) {
+				add(i, r, board.get(i, r));
+			}
+		}
+	}
+
+	/**
+	 * count a token that came to the cell.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param side RED or YELLOW
+	 */
+	void add(int col, int row, int side) {
+		update(col, row, (side==BitBoard.RED) ? 1 : yellowOne);
+	}
+
+	/**
+	 * stop counting the token that left the cell.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param side RED or YELLOW, the side of the token
+	 */
+	void remove(int col, int row, int side) {
+		update(col, row, (side==BitBoard.RED) ? -1 : -yellowOne);
+	}
+
+	/**
+	 * count the token of the cell for the other side.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param side RED or YELLOW, the side of the token before it changes
+	 */
+	void flip(int col, int row, int side) {
+		update(col, row, (side==BitBoard.RED) ? yellowOne-1 : 1-yellowOne);
+	}
+
+	/**
+	 * add a change of the count to every line through the cell and keep the totals.
+	 * @param col index of the column
+	 * @param row index of the row
+	 * @param delta change of the counts
+	 */
+	private void update(int col, int row, int delta) {
+		int last=winLength-1;
+		for (int d=0; d<4; d++) {
+			int dc=DC[d];
+			int dr=DR[d];
+			//the cell is cell k of the line starting k steps back, inside the board
+			int from=(dc==0) ? 0 : Math.max(0, col-(cols-1-last));
+			int to=(dc==0) ? last : Math.min(last, col);
+			if (dr==1) {
+				to=Math.min(to, row);
+			}
+			else if (dr==-1) {
+				from=Math.max(from, last-row);
+			}
+			int[][] lines=counts[d];
+			for (int k=from; k<=to; k++) {
+				int c=col-k*dc;
+				int r=row-k*dr;
+				int[] line=lines[c];
+				if (r>=line.length) {
+					line=java.util.Arrays.copyOf(line, Math.max(r+1, line.length*2));
+					lines[c]=line;
+				}
+				int old=line[r];
+				int count=old+delta;
+				line[r]=count;
+				balance+=value[count]-value[old];
+				redThrees+=redThree[count]-redThree[old];
+				yellowThrees+=yellowThree[count]-yellowThree[old];
+			}
+		}
+	}
+
+	/**
+	 * get the number of lines where the side has winLength-1 tokens and the last cell is empty,
+	 * the same as BitBoard.countThrees.
+	 * @param side RED or YELLOW
+	 * @return number of open threes
+	 */
+	public int threes(int side) {
+		return (side==BitBoard.RED) ? redThrees : yellowThrees;
+	}
+
+	/**
+	 * get the weights of the lines only the side has tokens in, less those of the other side.
+	 * @param side RED or YELLOW
+	 * @return score of the open lines for side
+	 */
+	public long lines(int side) {
+		return (side==BitBoard.RED) ? balance : -balance;
+	}
+
+	/**
+	 * count the columns where a drop of the side would complete a line.
+	 * @param side RED or YELLOW
+	 * @return number of playable winning cells
+	 */
+	public int playable(int side) {
+		int total=0;
+		for (int i=0; i<cols; i++) {
+			if (completes(i, board.height(i), side)) {
+				total++;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * check whether a token of the side in the empty cell would complete a line.
+	 * @param col index of the column
+	 * @param row index of the row, the cell has to be empty
+	 * @param side RED or YELLOW
+	 * @return true if one line through the cell misses only that token
+	 */
+	public boolean completes(int col, int row, int side) {
+		return (winners(col, row) & (1<<side))!=0;
+	}
+
+	/**
+	 * find the sides a token in the empty cell would complete a line for.
+	 * @param col index of the column
+	 * @param row index of the row, the cell has to be empty
+	 * @return bit RED set for red and bit YELLOW set for yellow
+	 */
+	private int winners(int col, int row) {
+		int last=winLength-1;
+		int redLine=last; //the count of a line missing one red token, with no yellow ones
+		int yellowLine=last*yellowOne;
+		int found=0;
+		for (int d=0; d<4; d++) {
+			int dc=DC[d];
+			int dr=DR[d];
+			int from=(dc==0) ? 0 : Math.max(0, col-(cols-1-last));
+			int to=(dc==0) ? last : Math.min(last, col);
+			if (dr==1) {
+				to=Math.min(to, row);
+			}
+			else if (dr==-1) {
+				from=Math.max(from, last-row);
+			}
+			int[][] lines=counts[d];
+			for (int k=from; k<=to; k++) {
+				int[] line=lines[col-k*dc];
+				int r=row-k*dr;
+				if (r<line.length) {
+					if (line[r]==redLine) {
+						found|=1<<BitBoard.RED;
+					}
+					else if (line[r]==yellowLine) {
+						found|=1<<BitBoard.YELLOW;
+					}
+				}
+			}
+			if (found==3) {
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * score the position for the side: its open lines against the other side's,
+	 * and a full line's weight for every column where it can drop a winning token.
+	 * @param side RED or YELLOW
+	 * @return score for side, positive when side is ahead, kept inside an int
+	 */
+	public int evaluate(int side) {
+		int cells=0; //playable winning cells of side less those of the other side
+		for (int i=0; i<cols; i++) {
+			int found=winners(i, board.height(i));
+			cells+=(found>>side & 1)-(found>>(1-side) & 1);
+		}
+		long score=lines(side) + (long) cells*weight[winLength];
+		return (int) Math.max(Integer.MIN_VALUE+1, Math.min(Integer.MAX_VALUE, score));
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*test cases.
+	*@param args to call the class
+	*/
+	public static void main(String[] args) {
+		//red has three in the bottom row, column 3 wins for red
+		BitBoard b=new BitBoard(7);
+		ThreatCounters t=b.threats();
+		for (int i=0; i<3; i++) {
+			b.drop(i, BitBoard.RED);
+		}
+		b.drop(6, BitBoard.YELLOW);
+		if (t.threes(BitBoard.RED)==1 && t.playable(BitBoard.RED)==1 && t.completes(3, 0, BitBoard.RED)
+			&& t.playable(BitBoard.YELLOW)==0 && t.evaluate(BitBoard.RED)>0 && t.evaluate(BitBoard.YELLOW)<0) {
+			System.out.println("Yay 1!");
+		}
+
+		//the counters follow every kind of move, as if they were counted again
+		java.util.Random random=new java.util.Random(24);
+		BitBoard z=new BitBoard(6, 3);
+		ThreatCounters kept=z.threats();
+		boolean same=true;
+		for (int i=0; i<5000 && same; i++) {
+			int col=random.nextInt(6);
+			int h=z.height(col);
+			int kind=(h==0) ? Move.DROP : random.nextInt(4);
+			int move=Move.of(kind, col, (kind==Move.POWER_DROP) ? random.nextInt(h+1) : (kind==Move.POWER_POP) ? random.nextInt(h) : 0);
+			z.play(move, random.nextInt(2));
+			ThreatCounters fresh=new ThreatCounters(new BitBoard(z));
+			for (int s=0; s<2; s++) {
+				same&=kept.threes(s)==fresh.threes(s) && kept.lines(s)==fresh.lines(s)
+					&& kept.threes(s)==z.countThrees(s) && kept.playable(s)==fresh.playable(s);
+			}
+		}
+		if (same) {
+			System.out.println("Yay 2!");
+		}
+
+		//copying a board counts its tokens
+		BitBoard copy=new BitBoard(7);
+		ThreatCounters copied=copy.threats();
+		copy.copyFrom(b);
+		copy.undo(Move.of(Move.DROP, 2, 0), BitBoard.RED);
+		if (copied.threes(BitBoard.RED)==0 && copied.lines(BitBoard.RED)>0 && t.threes(BitBoard.RED)==1) {
+			System.out.println("Yay 3!");
+		}
+
+		//more then 65535 red threes do not spill into yellow's count
+		BitBoard wide=new BitBoard(100000);
+		ThreatCounters many=wide.threats();
+		for (int i=0; i<100000; i++) {
+			if (i%4!=3) {
+				wide.drop(i, BitBoard.RED);
+			}
+		}
+		//six full rows of connect seven, lines of weight 4096 add up past an int
+		BitBoard seven=new BitBoard(120000, 7);
+		ThreatCounters heavy=seven.threats();
+		for (int r=0; r<6; r++) {
+			for (int i=0; i<120000; i++) {
+				seven.drop(i, BitBoard.RED);
+			}
+		}
+		if (many.threes(BitBoard.RED)==wide.countThrees(BitBoard.RED) && many.threes(BitBoard.RED)>65535
+			&& many.threes(BitBoard.YELLOW)==0 && heavy.lines(BitBoard.RED)>Integer.MAX_VALUE
+			&& heavy.evaluate(BitBoard.RED)==Integer.MAX_VALUE && heavy.evaluate(BitBoard.YELLOW)<0) {
+			System.out.println("Yay 4!");
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/** a column of tokens stored in a byte array.
+ * same contract as Column&lt;Token&gt; (size, capacity, get, set, add, delete)
+ * but every change is made in place with System.arraycopy,
+ * and the array only grows so nothing is allocated after warm-up.
+ * @author Fatemah Bahzad
+ */
+
+public class TokenColumn {
+
+	//default initial capacity / minimum capacity
+	private static final int DEFAULT_CAPACITY = 2;
+
+	/**
+	 * tokens by their stored byte minus one, 0 is an empty cell.
+	 */
+	private static final Token[] TOKENS = Token.values();
+
+	/**
+	 data holds ordinal+1 of every token, 0 for null.
+	 */
+	private byte[] data;
+	/**
+	 number of tokens in the column.
+	 */
+	private int size;
+
+	/**
+	  * create an empty column with the DEFAULT_CAPACITY and size zero.
+	  */
+	public TokenColumn() {
+		data=new byte[DEFAULT_CAPACITY];
+		size=0;
+	}
+
+	/**
+	  * create an empty column with the initialCapacity and size =initialCapacity .
+	  * @param initialCapacity how many items data can hold
+	  */
+	public TokenColumn(int initialCapacity) {
+		if (initialCapacity<1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		data=new byte[initialCapacity];
+		size=initialCapacity;
+	}
+
+	/**
+	  * get the current number of elements.
+	  * @return int current number of elements
+	  */
+	public int size() {
+		return size;
+	}
+
+	/**
+	  * get the capacity of the column.
+	  * @return capacity of the column.
+	  */
+	public int capacity() {
+		if (size==0) {
+			return DEFAULT_CAPACITY;
+		}
+		return data.length;
+	}
+
+	/**
+	  * Change the item at the given index to be the given value.
+	  * @param index the place of the value to change
+	  * @param value of the new value in replacement
+	  * @return old item at that index.
+	  */
+	public Token set(int index, Token value) {
+		if (index<0|| index>size) {
+			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
+		}
+		Token old=decode(data[index]);//to return the old value
+		data[index]=encode(value);
+		return old;
+	}
+
+	/**
+	  * get the item from the index.
+	  * @param index of the value
+	  * @return return item from the index
+	  */
+	public Token get(int index) {
+		if (index<0|| index>size) {
+			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
+		}
+		return decode(data[index]);
+	}
+
+	/**
+	  * get the side of the item at the index without boxing it into a Token.
+	  * @param index of the value
+	  * @return BitBoard.RED, BitBoard.YELLOW or BitBoard.EMPTY
+	  */
+	public int side(int index) {
+		if (index<0|| index>=size) {
+			return BitBoard.EMPTY;
+		}
+		return data[index]-1;
+	}
+
+	/**
+	  * add an element to the end of the column.
+	  * @param value to add
+	  */
+	public void add(Token value) {
+		ensureCapacity(size+1);
+		data[size]=encode(value); //add it to the end after changing the capacity
+		size++;
+	}
+
+	/**
+	  * Insert the given value at the given index.
+	  * @param index to insert the value in
+	  * @param value to add
+	  */
+	public void add(int index, Token value) {
+		//check the index
+		if (index<0|| index>size) {
+			throw new IndexOutOfBoundsException("out of bound");
+		}
+		ensureCapacity(size+1);
+		System.arraycopy(data, index, data, index+1, size-index); //shift up from the index
+		data[index]=encode(value);// insert
+		size++;
+	}
+
+	/**
+	  * remove the item at the index.
+	  * @param index to remove the value from
+	  * @return the deleted item
+	  */
+	public Token delete(int index) {
+		if (index<0|| index>=size) {
+			throw new IndexOutOfBoundsException( "Index: " + index + " out of bounds!");
+		}
+		Token old=decode(data[index]); //get the element to return it
+		System.arraycopy(data, index+1, data, index, size-index-1); //shift down over the index
+		size--;
+		data[size]=0; //clear the old top so get(size) is null like in Column
+		return old;
+	}
+
+	/**
+	  * remove every item, the capacity is kept for reuse.
+	  */
+	public void clear() {
+		for (int i=0; i<size; i++) {
+			data[i]=0;
+		}
+		size=0;
+	}
+
+	/**
+	  * double the capacity until it can hold the given number of items.
+	  * @param needed number of items to hold
+	  */
+	private void ensureCapacity(int needed) {
+		if (needed<=data.length) {
+			return;
+		}
+		int cap=data.length*2;
+		while (cap<needed) {
+			cap*=2;
+		}
+		byte[] data2=new byte[cap];
+		System.arraycopy(data, 0, data2, 0, size);
+		data=data2;
+	}
+
+	/**
+	  * store a token as a byte.
+	  * @param value the token, can be null
+	  * @return ordinal+1 or 0 for null
+	  */
+	private static byte encode(Token value) {
+		return value==null ? 0 : (byte) (value.ordinal()+1);
+	}
+
+	/**
+	  * read a token back from its byte.
+	  * @param b the stored byte
+	  * @return the token or null
+	  */
+	private static Token decode(byte b) {
+		return b==0 ? null : TOKENS[b-1];
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//******************************************************
+	/**
+	*This method is provided for debugging purposes.
+	*it just prints out the column for easy viewing.
+	*@return String
+	*/
+	public String toString() {
+		StringBuilder s = new StringBuilder("TokenColumn with " + size()
+			+ " items and a capacity of " + capacity() + ":");
+		for (int i = 0; i < size(); i++) {
+			s.append("\n  ["+i+"]: " + get(i));
+		}
+		return s.toString();
+	}
+
+	/**
+	*test cases.
+	*@param args call the class
+	*/
+	public static void main(String args[]){
+		TokenColumn col = new TokenColumn();
+		if((col.size() == 0) && (col.capacity() == 2)){
+			System.out.println("Yay 1");
+		}
+
+		for(int i = 0; i < 3; i++) {
+			col.add(i%2==0 ? Token.RED : Token.YELLOW);
+		}
+		if(col.size() == 3 && col.get(2) == Token.RED && col.capacity() == 4
+			&& col.side(1) == BitBoard.YELLOW && col.get(3) == null){
+			System.out.println("Yay 2");
+		}
+
+		col.add(0, Token.YELLOW);
+		col.add(2, Token.RED);
+		//Y R R Y R
+		if (col.size() == 5 && col.get(0) == Token.YELLOW && col.get(2) == Token.RED
+			&& col.set(3, Token.RED) == Token.YELLOW && col.capacity() == 8){
+			System.out.println("Yay 3");
+		}
+
+		if (col.delete(0) == Token.YELLOW && col.delete(3) == Token.RED && col.size() == 3
+			&& col.get(0) == Token.RED && col.get(3) == null && col.capacity() == 8){
+			System.out.println("Yay 4");
+		}
+
+		col.clear();
+		if (col.size() == 0 && col.side(0) == BitBoard.EMPTY) {
+			System.out.println("Yay 5");
+		}
+	}
+}
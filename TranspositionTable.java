@@ -0,0 +1,140 @@
+/** a fixed size table of search results keyed by position hash.
+ * every entry packs score, depth, bound and best move into one long, and the
+ * slot also keeps key xor entry. a reader only trusts an entry when the two
+ * agree, so threads can share the table without locks: an entry torn by two
+ * writers at once just looks like a miss.
+ * when two positions share a slot the deeper search keeps it, entries of
+ * older searches are always replaced.
+ * @author Fatemah Bahzad
+ */
+
+public class TranspositionTable {
+
+	/**
+	 * the score is exact.
+	 */
+	public static final int EXACT = 0;
+	/**
+	 * the score is a lower bound, the search failed high.
+	 */
+	public static final int LOWER = 1;
+	/**
+	 * the score is an upper bound, the search failed low.
+	 */
+	public static final int UPPER = 2;
+
+	/**
+	 * added to the score so it is stored as a positive number, scores are within +-2^20.
+	 */
+	private static final int SCORE_OFFSET = 1<<20;
+
+	/**
+	 * key xor entry of every slot.
+	 */
+	private final long[] checks;
+	/**
+	 * entry of every slot, 0 when the slot is empty.
+	 */
+	private final long[] entries;
+	/**
+	 * search number that stored every slot.
+	 */
+	private final byte[] generations;
+	private final int mask;
+	/**
+	 * number of the current search.
+	 */
+	private volatile int generation;
+
+	/**
+	*create a table with 2^bits entries.
+	*@param bits log2 of the number of entries
+	*/
+	public TranspositionTable(int bits) {
+		if (bits<1 || bits>30) {
+			throw new IllegalArgumentException("Table bits must be between 1 and 30");
+		}
+		checks=new long[1<<bits];
+		entries=new long[1<<bits];
+		generations=new byte[1<<bits];
+		mask=(1<<bits)-1;
+	}
+
+	/**
+	*start a new search, the entries stored so far can be replaced by any new one.
+	*/
+	public void newSearch() {
+		generation=(generation+1)&0xFF;
+	}
+
+	/**
+	*look up a position.
+	*@param key hash of the position
+	*@return the entry, read it with score, depth, bound and move, or 0 if there is none
+	*/
+	public long probe(long key) {
+		int slot=(int) key & mask;
+		long entry=entries[slot];
+		if (entry==0 || (checks[slot]^entry)!=key) {
+			return 0L;
+		}
+		return entry;
+	}
+
+	/**
+	*store the result of a search, unless the slot holds a deeper result of the same search.
+	*@param key hash of the position
+	*@param depth plies searched, 0 to 255
+	*@param score the score found
+	*@param bound EXACT, LOWER or UPPER
+	*@param move the best move found, packed as in Move
+	*/
+	public void store(long key, int depth, int score, int bound, int move) {
+		int slot=(int) key & mask;
+		long old=entries[slot];
+		if (old!=0 && generations[slot]==(byte) generation && depth(old)>depth) {
+			return;
+		}
+		long entry=((long) (score+SCORE_OFFSET)) | ((long) depth<<21) | ((long) bound<<29)
+			| ((move & 0xFFFFFFFFL)<<31);
+		entries[slot]=entry;
+		checks[slot]=key^entry;
+		generations[slot]=(byte) generation;
+	}
+
+	/**
+	*get the score of an entry.
+	*@param entry the entry returned by probe
+	*@return the score
+	*/
+	public static int score(long entry) {
+		return (int) (entry & ((1L<<21)-1))-SCORE_OFFSET;
+	}
+
+	/**
+	*get the depth of an entry.
+	*@param entry the entry returned by probe
+	*@return plies searched
+	*/
+	public static int depth(long entry) {
+		return (int) (entry>>>21) & 0xFF;
+	}
+
+	/**
+	*get the bound of an entry.
+	*@param entry the entry returned by probe
+	*@return EXACT, LOWER or UPPER
+	*/
+	public static int bound(long entry) {
+		return (int) (entry>>>29) & 3;
+	}
+
+	/**
+	*get the best move of an entry.
+	*@param entry the entry returned by probe
+	*@return the move packed as in Move
+	*/
+	public static int move(long entry) {
+		return (int) (entry>>>31);
+	}
+}
@@ -0,0 +1,410 @@
+import java.io.OutputStream;
+import java.util.function.IntSupplier;
+
+/** the work measured by the benchmarks, written against the game classes.
+ * JMH only runs benchmarks in a named package and those can not see the
+ * default package, so every workload is built here and handed over as an
+ * IntSupplier. a workload leaves its objects as it found them, so it can run
+ * again and again, and returns a number for the benchmark to consume.
+ * @author Fatemah Bahzad
+ */
+
+public final class BenchmarkFixtures {
+
+	/**
+	 * a middle game opening, moves as they are typed in the game.
+	 */
+	private static final String[] MID_GAME = {
+		"D 3", "D 3", "D 2", "D 4", "D 4", "D 2", "PD 3 0", "D 5", "D 1", "PD 4 1",
+		"D 6", "D 0", "PD 2 2", "D 3"
+	};
+
+	/**
+	 * the tokens, values() makes a new array every call.
+	 */
+	private static final Token[] TOKENS = Token.values();
+
+	/**
+	 * tokens in the tall column of the tall board.
+	 */
+	private static final int TALL_ROWS = 256;
+
+	/**
+	 * columns, rows and win length of the wide board.
+	 */
+	private static final int WIDE_COLS = 128;
+	private static final int WIDE_ROWS = 12;
+	private static final int WIDE_WIN = 10;
+
+	/**
+	 * no instances, only static factories.
+	 */
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	*add size tokens to a new column.
+	*@param size tokens to add
+	*@return the workload, returning the size of the column
+	*/
+	public static IntSupplier columnAdd(int size) {
+		return () -> {
+			Column<Token> column=new Column<>();
+			for (int i=0; i<size; i++) {
+				column.add(TOKENS[i&1]);
+			}
+			return column.size();
+		};
+	}
+
+	/**
+	*insert a token in the middle of a column of size tokens, then take the top one away.
+	*@param size tokens in the column
+	*@return the workload, returning the size of the column
+	*/
+	public static IntSupplier columnAddIndex(int size) {
+		Column<Token> column=filled(size);
+		return () -> {
+			column.add(size/2, Token.RED);
+			column.delete(size);
+			return column.size();
+		};
+	}
+
+	/**
+	*delete a token in the middle of a column of size tokens, then add one on top.
+	*@param size tokens in the column
+	*@return the workload, returning the symbol of the deleted token
+	*/
+	public static IntSupplier columnDelete(int size) {
+		Column<Token> column=filled(size);
+		return () -> {
+			Token deleted=column.delete(size/2);
+			column.add(deleted);
+			return deleted.getSymbol();
+		};
+	}
+
+	/**
+	*make one move of the kind on a middle game and take it back.
+	*@param kind drop, pop, powerDrop or powerPop
+	*@return the workload, returning the low bits of the undo record
+	*/
+	public static IntSupplier move(String kind) {
+		PowerConnectFour game=game("midGame");
+		int move=firstMove(game, kind);
+		return () -> {
+			long undo=game.makeMove(move);
+			game.unmakeMove(undo);
+			return (int) undo;
+		};
+	}
+
+	/**
+	*ask the game whether red connected four.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning 1 if red connected four
+	*/
+	public static IntSupplier gameWin(String board) {
+		PowerConnectFour game=game(board);
+		return () -> game.hasFourConnected(Token.RED) ? 1 : 0;
+	}
+
+	/**
+	*look for four connected over the whole board.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning 1 if red connected four
+	*/
+	public static IntSupplier boardWin(String board) {
+		BitBoard bits=bits(board);
+		return () -> bits.hasFourConnected(BitBoard.RED) ? 1 : 0;
+	}
+
+	/**
+	*look for four connected through the tallest column only, as after a move.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning 1 if red connected four
+	*/
+	public static IntSupplier columnWin(String board) {
+		BitBoard bits=bits(board);
+		int col=0;
+		for (int i=1; i<bits.cols(); i++) {
+			if (bits.height(i)>bits.height(col)) {
+				col=i;
+			}
+		}
+		int tallest=col;
+		return () -> bits.hasFourConnected(BitBoard.RED, tallest, 0) ? 1 : 0;
+	}
+
+	/**
+	*score the position from scratch, counting the open threes of both sides over the whole board.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning the open threes of red less those of yellow
+	*/
+	public static IntSupplier scanThreats(String board) {
+		BitBoard bits=bits(board);
+		return () -> bits.countThrees(BitBoard.RED)-bits.countThrees(BitBoard.YELLOW);
+	}
+
+	/**
+	*score the position from the threat counters kept by the board.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning the score for red
+	*/
+	public static IntSupplier keptThreats(String board) {
+		BitBoard bits=bits(board);
+		bits.threats();
+		return () -> bits.evaluate(BitBoard.RED);
+	}
+
+	/**
+	*make and take back a drop on the tallest column while the threat counters are kept,
+	*the cost the counters add to every move of a search.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning the score for red after the drop
+	*/
+	public static IntSupplier countedMove(String board) {
+		BitBoard bits=bits(board);
+		bits.threats();
+		int col=0;
+		for (int i=1; i<bits.cols(); i++) {
+			if (bits.height(i)>bits.height(col)) {
+				col=i;
+			}
+		}
+		int move=Move.of(Move.DROP, col, 0);
+		return () -> {
+			bits.play(move, BitBoard.RED);
+			int score=bits.evaluate(BitBoard.RED);
+			bits.undo(move, BitBoard.RED);
+			return score;
+		};
+	}
+
+	/**
+	*ask every one of many standard games whether red connected four, one game after the other.
+	*@param boards number of games
+	*@return the workload, returning the number of games red won
+	*/
+	public static IntSupplier gameWins(int boards) {
+		PowerConnectFour[] games=randomGames(boards);
+		return () -> {
+			int won=0;
+			for (PowerConnectFour game : games) {
+				won+=game.hasFourConnected(Token.RED) ? 1 : 0;
+			}
+			return won;
+		};
+	}
+
+	/**
+	*evaluate many standard games in a batch, with the vector code if it was built and loaded.
+	*@param boards number of games
+	*@return the workload, returning the score of the first game
+	*/
+	public static IntSupplier batch(int boards) {
+		BoardBatch batch=batched(boards);
+		return () -> {
+			batch.run();
+			return batch.score(0);
+		};
+	}
+
+	/**
+	*evaluate many standard games in a batch, one board at a time.
+	*@param boards number of games
+	*@return the workload, returning the score of the first game
+	*/
+	public static IntSupplier batchScalar(int boards) {
+		BoardBatch batch=batched(boards);
+		return () -> {
+			batch.runScalar();
+			return batch.score(0);
+		};
+	}
+
+	/**
+	*draw the grid the way the game shows it, into System.out.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning the rows drawn
+	*/
+	public static IntSupplier displayGrid(String board) {
+		PowerConnectFour game=game(board);
+		return () -> {
+			PowerConnectFourGUI.displayGrid(game);
+			return game.sizeRow();
+		};
+	}
+
+	/**
+	*draw the grid with an ANSI renderer, a drop is made and taken back in turns
+	*so every frame changes one cell.
+	*@param board empty, midGame, tall or wide
+	*@return the workload, returning the rows drawn
+	*/
+	public static IntSupplier ansiGrid(String board) {
+		PowerConnectFour game=game(board);
+		GridRenderer renderer=new GridRenderer(OutputStream.nullOutputStream(), true);
+		renderer.render(game);
+		int move=Move.of(Move.DROP, 0, 0);
+		long[] undo={PowerConnectFour.ILLEGAL};
+		return () -> {
+			if (undo[0]==PowerConnectFour.ILLEGAL) {
+				undo[0]=game.makeMove(move);
+			}
+			else {
+				game.unmakeMove(undo[0]);
+				undo[0]=PowerConnectFour.ILLEGAL;
+			}
+			renderer.render(game);
+			return game.sizeRow();
+		};
+	}
+
+	/**
+	*build one of the benchmark games.
+	*@param board empty, midGame, tall or wide
+	*@return the game
+	*/
+	public static PowerConnectFour game(String board) {
+		PowerConnectFour game=board.equals("wide") ? new PowerConnectFour(WIDE_COLS, WIDE_ROWS, WIDE_WIN)
+			: new PowerConnectFour();
+		switch (board) {
+			case "empty":
+				break;
+			case "midGame":
+				for (String move : MID_GAME) {
+					String[] parts=move.split(" ");
+					boolean done=parts[0].equals("D") ? game.drop(Integer.parseInt(parts[1]))
+						: game.powerDrop(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+					if (!done) {
+						throw new IllegalStateException("Invalid middle game move " + move);
+					}
+				}
+				break;
+			case "tall":
+				//power drops at the bottom keep the colors alternating, so nobody wins
+				for (int i=0; i<TALL_ROWS; i++) {
+					game.powerDrop(3, 0);
+				}
+				game.drop(2);
+				game.drop(4);
+				break;
+			case "wide":
+				//connect ten on 128 full columns, runs of two so nobody wins
+				BitBoard wide=new BitBoard(WIDE_COLS, WIDE_WIN);
+				for (int r=0; r<WIDE_ROWS; r++) {
+					for (int i=0; i<WIDE_COLS; i++) {
+						wide.drop(i, (i/2+r)&1);
+					}
+				}
+				game.restore(wide, 1, WIDE_ROWS+1);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown board " + board);
+		}
+		return game;
+	}
+
+	/**
+	*build one of the benchmark games as a bitboard.
+	*@param board empty, midGame, tall or wide
+	*@return the bitboard
+	*/
+	private static BitBoard bits(String board) {
+		PowerConnectFour game=game(board);
+		BitBoard bits=new BitBoard(game.sizeCol(), game.winLength());
+		game.copyGrid(bits);
+		return bits;
+	}
+
+	/**
+	*play random games on the standard board, every kind of move, no column taller then 8.
+	*@param boards number of games
+	*@return the games, the same ones every time
+	*/
+	private static PowerConnectFour[] randomGames(int boards) {
+		java.util.Random random=new java.util.Random(boards);
+		PowerConnectFour[] games=new PowerConnectFour[boards];
+		int[] moves=new int[1024];
+		for (int i=0; i<boards; i++) {
+			PowerConnectFour game=new PowerConnectFour();
+			int plies=random.nextInt(30);
+			for (int k=0; k<plies; k++) {
+				int n=game.legalMoves(moves);
+				int move=moves[random.nextInt(n)];
+				int col=Move.col(move);
+				int kind=Move.kind(move);
+				if ((kind==Move.DROP || kind==Move.POWER_DROP) && game.height(col)==BoardBatch.ROWS) {
+					continue;
+				}
+				game.makeMove(move);
+			}
+			games[i]=game;
+		}
+		return games;
+	}
+
+	/**
+	*put random standard games in a batch.
+	*@param boards number of games
+	*@return the batch
+	*/
+	private static BoardBatch batched(int boards) {
+		BoardBatch batch=new BoardBatch(boards);
+		for (PowerConnectFour game : randomGames(boards)) {
+			batch.add(game);
+		}
+		return batch;
+	}
+
+	/**
+	*find the first legal move of the kind, power moves on row 1 or higher.
+	*@param game the position
+	*@param kind drop, pop, powerDrop or powerPop
+	*@return the move packed as in Move
+	*/
+	private static int firstMove(PowerConnectFour game, String kind) {
+		int type;
+		switch (kind) {
+			case "drop":
+				type=Move.DROP;
+				break;
+			case "pop":
+				type=Move.POP;
+				break;
+			case "powerDrop":
+				type=Move.POWER_DROP;
+				break;
+			case "powerPop":
+				type=Move.POWER_POP;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown move kind " + kind);
+		}
+		int first=(type==Move.POWER_DROP || type==Move.POWER_POP) ? 1 : 0;
+		for (int col=0; col<game.sizeCol(); col++) {
+			for (int row=first; row<=((first==0) ? 0 : game.sizeRow()); row++) {
+				int move=Move.of(type, col, row);
+				if (game.isLegal(move)) {
+					return move;
+				}
+			}
+		}
+		throw new IllegalStateException("The game has no " + kind + " move");
+	}
+
+	/**
+	*build a column of alternating tokens.
+	*@param size tokens in the column
+	*@return the column
+	*/
+	private static Column<Token> filled(int size) {
+		Column<Token> column=new Column<>();
+		for (int i=0; i<size; i++) {
+			column.add(TOKENS[i&1]);
+		}
+		return column;
+	}
+}
@@ -0,0 +1,63 @@
+package connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** checking many random standard games at once.
+ * games asks every game whether red connected four, an answer the games keep
+ * as moves are made, batch finds wins, moves and scores of all of them from their
+ * masks with BoardBatch, and scalar does the same one board at a time. batch
+ * only uses the vector code when the game was built with the vector profile,
+ * the forks always add the incubator module.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BatchBenchmark {
+
+	@Param({"1024", "16384"})
+	public int boards;
+
+	private IntSupplier games;
+	private IntSupplier batch;
+	private IntSupplier scalar;
+
+	@Setup
+	public void setup() {
+		games=Fixtures.get("gameWins", boards);
+		batch=Fixtures.get("batch", boards);
+		scalar=Fixtures.get("batchScalar", boards);
+	}
+
+	@Benchmark
+	public int games() {
+		return games.getAsInt();
+	}
+
+	@Benchmark
+	public int batch() {
+		return batch.getAsInt();
+	}
+
+	@Benchmark
+	public int scalar() {
+		return scalar.getAsInt();
+	}
+}
@@ -0,0 +1,43 @@
+package connectfour.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** runs the benchmarks with the JMH command line, always with the gc profiler.
+ * the results are also written to jmh-result.json, so a run before and a run
+ * after a change can be compared. other JMH options are passed on as they are.
+ * @author Fatemah Bahzad
+ */
+
+public final class Benchmarks {
+
+	/**
+	 * no instances.
+	 */
+	private Benchmarks() {
+	}
+
+	/**
+	*run the benchmarks.
+	*@param args JMH options, for example a regular expression of the benchmarks to run
+	*@throws CommandLineOptionException if an option is not understood
+	*@throws RunnerException if a benchmark fails
+	*/
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions options=new CommandLineOptions(args);
+		OptionsBuilder builder=new OptionsBuilder();
+		builder.parent(options).addProfiler(GCProfiler.class);
+		if (!options.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!options.getResult().hasValue()) {
+			builder.result("jmh-result.json");
+		}
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,60 @@
+package connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Column add, add(index) and delete on columns as tall as a game and much taller.
+ * add builds a new column of the size, add(index) and delete work in the
+ * middle of a full column and put it back the way it was.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ColumnBenchmark {
+
+	@Param({"6", "64", "1024"})
+	public int size;
+
+	private IntSupplier add;
+	private IntSupplier addIndex;
+	private IntSupplier delete;
+
+	@Setup
+	public void setup() {
+		add=Fixtures.get("columnAdd", size);
+		addIndex=Fixtures.get("columnAddIndex", size);
+		delete=Fixtures.get("columnDelete", size);
+	}
+
+	@Benchmark
+	public int add() {
+		return add.getAsInt();
+	}
+
+	@Benchmark
+	public int addIndex() {
+		return addIndex.getAsInt();
+	}
+
+	@Benchmark
+	public int delete() {
+		return delete.getAsInt();
+	}
+}
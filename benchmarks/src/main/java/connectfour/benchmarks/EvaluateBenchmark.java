@@ -0,0 +1,61 @@
+package connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** scoring a position on the benchmark boards.
+ * scan counts the open threes of both sides over the whole bitboard, kept reads
+ * the threat counters the board keeps, and move is a drop made and taken back
+ * with the counters kept, what they add to every move of a search.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluateBenchmark {
+
+	@Param({"empty", "midGame", "tall", "wide"})
+	public String board;
+
+	private IntSupplier scan;
+	private IntSupplier kept;
+	private IntSupplier move;
+
+	@Setup
+	public void setup() {
+		scan=Fixtures.get("scanThreats", board);
+		kept=Fixtures.get("keptThreats", board);
+		move=Fixtures.get("countedMove", board);
+	}
+
+	@Benchmark
+	public int scan() {
+		return scan.getAsInt();
+	}
+
+	@Benchmark
+	public int kept() {
+		return kept.getAsInt();
+	}
+
+	@Benchmark
+	public int move() {
+		return move.getAsInt();
+	}
+}
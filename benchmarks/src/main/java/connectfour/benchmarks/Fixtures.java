@@ -0,0 +1,38 @@
+package connectfour.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.IntSupplier;
+
+/** gets the workloads of BenchmarkFixtures, which is in the default package with the game.
+ * the workloads are looked up once in the setup, so the measured code makes a
+ * plain interface call that the JIT inlines.
+ * @author Fatemah Bahzad
+ */
+
+final class Fixtures {
+
+	/**
+	 * no instances, only static helpers.
+	 */
+	private Fixtures() {
+	}
+
+	/**
+	*build a workload.
+	*@param name name of the factory method in BenchmarkFixtures
+	*@param argument its argument, an Integer or a String
+	*@return the workload
+	*/
+	static IntSupplier get(String name, Object argument) {
+		Class<?> type=(argument instanceof Integer) ? int.class : argument.getClass();
+		try {
+			return (IntSupplier) Class.forName("BenchmarkFixtures").getMethod(name, type).invoke(null, argument);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not build " + name, e.getCause());
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No workload " + name, e);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** every move kind of PowerConnectFour on a middle game.
+ * the move is made with makeMove, which calls drop, pop, powerDrop or powerPop,
+ * and taken back with unmakeMove, so the time is one move and one take back.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MoveBenchmark {
+
+	@Param({"drop", "pop", "powerDrop", "powerPop"})
+	public String kind;
+
+	private IntSupplier move;
+
+	@Setup
+	public void setup() {
+		move=Fixtures.get("move", kind);
+	}
+
+	@Benchmark
+	public int makeAndUnmake() {
+		return move.getAsInt();
+	}
+}
@@ -0,0 +1,65 @@
+package connectfour.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** PowerConnectFourGUI.displayGrid drawing a middle game and a tall board.
+ * System.out goes to a stream that throws the text away, so the time is the
+ * formatting and printing, not the terminal. ansi draws with a GridRenderer in
+ * ANSI mode, where every frame changes one cell.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RenderBenchmark {
+
+	@Param({"empty", "midGame", "tall"})
+	public String board;
+
+	private IntSupplier display;
+	private IntSupplier ansi;
+	private PrintStream out;
+
+	@Setup
+	public void setup() {
+		display=Fixtures.get("displayGrid", board);
+		ansi=Fixtures.get("ansiGrid", board);
+		out=System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public int displayGrid() {
+		return display.getAsInt();
+	}
+
+	@Benchmark
+	public int ansi() {
+		return ansi.getAsInt();
+	}
+}
@@ -0,0 +1,61 @@
+package connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** hasFourConnected on an empty board, a middle game, a tall power drop tower
+ * and a wide board of 128 columns where ten connected tokens win.
+ * game is the answer the game keeps after every move, board scans the whole
+ * bitboard and column checks the lines through one column, as a move does.
+ * @author Fatemah Bahzad
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WinCheckBenchmark {
+
+	@Param({"empty", "midGame", "tall", "wide"})
+	public String board;
+
+	private IntSupplier game;
+	private IntSupplier scan;
+	private IntSupplier column;
+
+	@Setup
+	public void setup() {
+		game=Fixtures.get("gameWin", board);
+		scan=Fixtures.get("boardWin", board);
+		column=Fixtures.get("columnWin", board);
+	}
+
+	@Benchmark
+	public int game() {
+		return game.getAsInt();
+	}
+
+	@Benchmark
+	public int board() {
+		return scan.getAsInt();
+	}
+
+	@Benchmark
+	public int column() {
+		return column.getAsInt();
+	}
+}
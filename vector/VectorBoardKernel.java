@@ -0,0 +1,197 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** the work of BoardBatch on as many boards at once as a vector holds.
+ * every lane is one board and gets what BoardBatch.scalar gives it, the
+ * bit count is done with shifts and adds since the vector API of Java 17 has none.
+ * the work is split in short passes over the arrays: the JIT only keeps vectors
+ * in registers when it can inline the whole loop, a pass doing everything is too
+ * big for that and its vectors end up as objects on the heap, slower then scalar code.
+ * it is only built by the vector profile and loaded by BoardBatch with reflection,
+ * the incubator module has to be added at run time:
+ * <pre>
+ *   java --add-modules jdk.incubator.vector -cp target/classes ...
+ * </pre>
+ * @author Fatemah Bahzad
+ */
+
+final class VectorBoardKernel implements BoardBatch.Kernel {
+
+	/**
+	 * the widest vector of longs the machine has.
+	 */
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	/**
+	 * step between the cells of a horizontal line, the diagonals step one less and one more.
+	 */
+	private static final int HORIZONTAL = BoardBatch.FIELD_BITS;
+
+	/**
+	 * masks of the bit count.
+	 */
+	private static final long ONES = 0x5555555555555555L;
+	private static final long TWOS = 0x3333333333333333L;
+	private static final long NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+
+	/**
+	 * evaluate boards from to to, whole vectors first and the rest one at a time.
+	 * the winning cells of a side are kept in wins until the wins are found last.
+	 * @param red red masks
+	 * @param yellow yellow masks
+	 * @param mover 0 when red is to move, -1 when yellow is
+	 * @param wins where the wins are written
+	 * @param moves where the move masks are written
+	 * @param scores where the scores are written
+	 * @param from first board
+	 * @param to board after the last one
+	 */
+	@Override
+	public void run(long[] red, long[] yellow, long[] mover, long[] wins, long[] moves, long[] scores, int from, int to) {
+		int end=from+(to-from)/SPECIES.length()*SPECIES.length();
+		moves(red, yellow, mover, moves, from, end);
+		for (int other=0; other<2; other++) {
+			vertical(red, yellow, mover, wins, from, end, other==1);
+			ends(red, yellow, mover, wins, from, end, other==1, HORIZONTAL, false);
+			ends(red, yellow, mover, wins, from, end, other==1, HORIZONTAL-1, false);
+			ends(red, yellow, mover, wins, from, end, other==1, HORIZONTAL+1, true);
+			score(wins, moves, scores, from, end, other==1);
+		}
+		four(red, wins, from, end, BitBoard.RED);
+		four(yellow, wins, from, end, BitBoard.YELLOW);
+		BoardBatch.scalar(red, yellow, mover, wins, moves, scores, end, to);
+	}
+
+	/**
+	 * find the drops and the pops of the mover.
+	 * @param red red masks
+	 * @param yellow yellow masks
+	 * @param mover 0 when red is to move, -1 when yellow is
+	 * @param moves where the move masks are written
+	 * @param from first board
+	 * @param to board after the last one, a whole number of vectors
+	 */
+	private static void moves(long[] red, long[] yellow, long[] mover, long[] moves, int from, int to) {
+		for (int i=from; i<to; i+=SPECIES.length()) {
+			LongVector r=LongVector.fromArray(SPECIES, red, i);
+			LongVector y=LongVector.fromArray(SPECIES, yellow, i);
+			LongVector m=LongVector.fromArray(SPECIES, mover, i);
+			LongVector own=r.lanewise(VectorOperators.XOR, r.lanewise(VectorOperators.XOR, y).and(m));
+			r.or(y).add(BoardBatch.BOTTOM).or(own.and(BoardBatch.BOTTOM)).intoArray(moves, i);
+		}
+	}
+
+	/**
+	 * find the cells on top of three tokens of one side.
+	 * @param red red masks
+	 * @param yellow yellow masks
+	 * @param mover 0 when red is to move, -1 when yellow is
+	 * @param cells where the cells are written
+	 * @param from first board
+	 * @param to board after the last one, a whole number of vectors
+	 * @param other false for the mover, true for the other side
+	 */
+	private static void vertical(long[] red, long[] yellow, long[] mover, long[] cells, int from, int to, boolean other) {
+		for (int i=from; i<to; i+=SPECIES.length()) {
+			LongVector r=LongVector.fromArray(SPECIES, red, i);
+			LongVector y=LongVector.fromArray(SPECIES, yellow, i);
+			LongVector m=LongVector.fromArray(SPECIES, mover, i);
+			LongVector p=r.lanewise(VectorOperators.XOR, r.lanewise(VectorOperators.XOR, y).and(other ? m.not() : m));
+			p.lanewise(VectorOperators.LSHL, 1).and(p.lanewise(VectorOperators.LSHL, 2))
+				.and(p.lanewise(VectorOperators.LSHL, 3)).intoArray(cells, i);
+		}
+	}
+
+	/**
+	 * add the cells completing a line of one side in one direction that is not vertical.
+	 * @param red red masks
+	 * @param yellow yellow masks
+	 * @param mover 0 when red is to move, -1 when yellow is
+	 * @param cells the cells found so far, where the cells are written
+	 * @param from first board
+	 * @param to board after the last one, a whole number of vectors
+	 * @param other false for the mover, true for the other side
+	 * @param s step between the cells of the line
+	 * @param last true to keep only the empty cells, after the last direction
+	 */
+	private static void ends(long[] red, long[] yellow, long[] mover, long[] cells, int from, int to, boolean other, int s, boolean last) {
+		for (int i=from; i<to; i+=SPECIES.length()) {
+			LongVector r=LongVector.fromArray(SPECIES, red, i);
+			LongVector y=LongVector.fromArray(SPECIES, yellow, i);
+			LongVector m=LongVector.fromArray(SPECIES, mover, i);
+			LongVector p=r.lanewise(VectorOperators.XOR, r.lanewise(VectorOperators.XOR, y).and(other ? m.not() : m));
+			LongVector up=p.lanewise(VectorOperators.LSHL, s);
+			LongVector down=p.lanewise(VectorOperators.LSHR, s);
+			LongVector before=up.and(p.lanewise(VectorOperators.LSHL, 2*s)); //two before the cell
+			LongVector after=down.and(p.lanewise(VectorOperators.LSHR, 2*s)); //two after the cell
+			LongVector found=before.and(p.lanewise(VectorOperators.LSHL, 3*s).or(down))
+				.or(after.and(up.or(p.lanewise(VectorOperators.LSHR, 3*s))))
+				.or(LongVector.fromArray(SPECIES, cells, i));
+			if (last) {
+				found=found.and(r.or(y).not().and(BoardBatch.CELLS));
+			}
+			found.intoArray(cells, i);
+		}
+	}
+
+	/**
+	 * count the empty winning cells of one side, the ones a drop reaches twice.
+	 * the mover's are written first, then the other side's are taken away.
+	 * @param cells the empty winning cells
+	 * @param moves the move masks, their empty cells are the drops
+	 * @param scores where the scores are written
+	 * @param from first board
+	 * @param to board after the last one, a whole number of vectors
+	 * @param other false for the mover, true for the other side
+	 */
+	private static void score(long[] cells, long[] moves, long[] scores, int from, int to, boolean other) {
+		for (int i=from; i<to; i+=SPECIES.length()) {
+			LongVector c=LongVector.fromArray(SPECIES, cells, i);
+			LongVector d=c.and(LongVector.fromArray(SPECIES, moves, i));
+			//the bits of both in one count, a board has at most 56 cells and 7 drops
+			LongVector x=c.sub(c.lanewise(VectorOperators.LSHR, 1).and(ONES));
+			LongVector z=d.sub(d.lanewise(VectorOperators.LSHR, 1).and(ONES));
+			x=x.and(TWOS).add(x.lanewise(VectorOperators.LSHR, 2).and(TWOS));
+			z=z.and(TWOS).add(z.lanewise(VectorOperators.LSHR, 2).and(TWOS));
+			x=x.add(z); //at most 8 in every 4 bits
+			x=x.and(NIBBLES).add(x.lanewise(VectorOperators.LSHR, 4).and(NIBBLES));
+			x=x.add(x.lanewise(VectorOperators.LSHR, 8));
+			x=x.add(x.lanewise(VectorOperators.LSHR, 16));
+			x=x.add(x.lanewise(VectorOperators.LSHR, 32)).and(0xFFL);
+			if (other) {
+				x=LongVector.fromArray(SPECIES, scores, i).sub(x);
+			}
+			x.intoArray(scores, i);
+		}
+	}
+
+	/**
+	 * find the boards where one side connected four, the wins of red are written
+	 * over the cells kept in wins and those of yellow are added.
+	 * @param side masks of the side
+	 * @param wins where the wins are written
+	 * @param from first board
+	 * @param to board after the last one, a whole number of vectors
+	 * @param bit RED or YELLOW
+	 */
+	private static void four(long[] side, long[] wins, int from, int to, int bit) {
+		for (int i=from; i<to; i+=SPECIES.length()) {
+			LongVector p=LongVector.fromArray(SPECIES, side, i);
+			LongVector m=p.and(p.lanewise(VectorOperators.LSHR, 1));
+			LongVector found=m.and(m.lanewise(VectorOperators.LSHR, 2));
+			m=p.and(p.lanewise(VectorOperators.LSHR, HORIZONTAL));
+			found=found.or(m.and(m.lanewise(VectorOperators.LSHR, 2*HORIZONTAL)));
+			m=p.and(p.lanewise(VectorOperators.LSHR, HORIZONTAL-1));
+			found=found.or(m.and(m.lanewise(VectorOperators.LSHR, 2*(HORIZONTAL-1))));
+			m=p.and(p.lanewise(VectorOperators.LSHR, HORIZONTAL+1));
+			found=found.or(m.and(m.lanewise(VectorOperators.LSHR, 2*(HORIZONTAL+1))));
+			//1 in the lanes with a line, the sign of found or -found
+			found=found.or(found.neg()).lanewise(VectorOperators.LSHR, 63).lanewise(VectorOperators.LSHL, bit);
+			if (bit!=BitBoard.RED) {
+				found=found.or(LongVector.fromArray(SPECIES, wins, i));
+			}
+			found.intoArray(wins, i);
+		}
+	}
+}